@@ -0,0 +1,58 @@
+package org.greencheek.logging.benchmarks;
+
+import org.greencheek.logging.accesscomponents.AccessLogElement;
+import org.greencheek.logging.domin.ResizableByteBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of each {@link AccessLogElement} implementation appending its value
+ * to the ring buffer slot, for a typical request.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccessLogElementBenchmark {
+
+    @Param({"literal", "%a", "%A", "%b", "%B", "%D", "%F", "%h", "%H", "%I", "%l", "%m", "%p", "%q", "%r",
+            "%s", "%S", "%t", "%T", "%u", "%U", "%v", "%{User-Agent}i", "%{Cache-Control}o",
+            "%{JSESSIONID}c", "%{benchmark}r", "%{benchmark}s", "%{yyyy-MM-dd'T'HH:mm:ss.SSSZ}t"})
+    public String pattern;
+
+    private AccessLogElement element;
+    private RequestFixture fixture;
+    private ResizableByteBuffer buffer;
+    private long date;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkAccessLogValve valve = new BenchmarkAccessLogValve();
+        valve.setPattern(pattern);
+        element = valve.getLogElements()[0];
+        fixture = new RequestFixture();
+        buffer = new ResizableByteBuffer(1024);
+        date = System.currentTimeMillis();
+    }
+
+    @Benchmark
+    public ResizableByteBuffer addElement() {
+        buffer.reset();
+        element.addElement(buffer, date, fixture.request, fixture.response, 1234);
+        return buffer;
+    }
+}
@@ -0,0 +1,18 @@
+package org.greencheek.logging.benchmarks;
+
+import org.greencheek.catalina.valves.DisruptorAccessLogValve;
+import org.greencheek.logging.accesscomponents.AccessLogElement;
+
+/**
+ * Gives the benchmarks access to the log elements the valve creates from its pattern.
+ */
+public class BenchmarkAccessLogValve extends DisruptorAccessLogValve {
+
+    public AccessLogElement[] getLogElements() {
+        return logElements;
+    }
+
+    public AccessLogElement[] createLogElementsForPattern() {
+        return createLogElements();
+    }
+}
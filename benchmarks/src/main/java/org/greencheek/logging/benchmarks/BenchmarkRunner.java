@@ -0,0 +1,37 @@
+package org.greencheek.logging.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the {@link ValveThroughputBenchmark} for 1, 4, 16 and 64 producer threads
+ * (or the thread counts given as arguments).  JMH only takes a single thread
+ * count per run, hence the loop.
+ */
+public class BenchmarkRunner {
+
+    private static final int[] DEFAULT_THREADS = {1, 4, 16, 64};
+
+    public static void main(String[] args) throws RunnerException {
+        int[] threads = DEFAULT_THREADS;
+        if(args.length>0) {
+            threads = new int[args.length];
+            for(int i=0;i<args.length;i++) {
+                threads[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        for(int t : threads) {
+            Options options = new OptionsBuilder()
+                    .include(ValveThroughputBenchmark.class.getSimpleName())
+                    .threads(t)
+                    .resultFormat(ResultFormatType.CSV)
+                    .result("valve-throughput-" + t + "-threads.csv")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.greencheek.logging.benchmarks;
+
+import org.greencheek.logging.domin.ResizableByteBuffer;
+import org.greencheek.logging.domin.ResizableCharBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends to the {@link ResizableCharBuffer}, and to the {@link ResizableByteBuffer}
+ * that is used for the ring buffer slots; for a single char, a String and a char[]
+ * of the given length.  The non ascii variant measures the UTF-8 encoding path of
+ * the byte buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BufferAppendBenchmark {
+
+    @Param({"8", "64", "256"})
+    public int length;
+
+    @Param({"true", "false"})
+    public boolean ascii;
+
+    private ResizableCharBuffer charBuffer;
+    private ResizableByteBuffer byteBuffer;
+    private String string;
+    private char[] chars;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StringBuilder b = new StringBuilder(length);
+        for(int i=0;i<length;i++) {
+            b.append(ascii ? (char)('a' + (i % 26)) : (char)('\u00e0' + (i % 26)));
+        }
+        string = b.toString();
+        chars = string.toCharArray();
+        charBuffer = new ResizableCharBuffer(1024);
+        byteBuffer = new ResizableByteBuffer(1024);
+    }
+
+    @Benchmark
+    public ResizableCharBuffer charBufferAppendChar() {
+        charBuffer.reset();
+        charBuffer.append(chars[0]);
+        return charBuffer;
+    }
+
+    @Benchmark
+    public ResizableCharBuffer charBufferAppendString() {
+        charBuffer.reset();
+        charBuffer.append(string);
+        return charBuffer;
+    }
+
+    @Benchmark
+    public ResizableCharBuffer charBufferAppendChars() {
+        charBuffer.reset();
+        charBuffer.append(chars);
+        return charBuffer;
+    }
+
+    @Benchmark
+    public ResizableByteBuffer byteBufferAppendChar() {
+        byteBuffer.reset();
+        byteBuffer.append(chars[0]);
+        return byteBuffer;
+    }
+
+    @Benchmark
+    public ResizableByteBuffer byteBufferAppendString() {
+        byteBuffer.reset();
+        byteBuffer.append(string);
+        return byteBuffer;
+    }
+
+    @Benchmark
+    public ResizableByteBuffer byteBufferAppendChars() {
+        byteBuffer.reset();
+        byteBuffer.append(chars);
+        return byteBuffer;
+    }
+}
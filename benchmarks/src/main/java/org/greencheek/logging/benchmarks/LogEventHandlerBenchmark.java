@@ -0,0 +1,120 @@
+package org.greencheek.logging.benchmarks;
+
+import org.apache.catalina.valves.Constants;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.res.StringManager;
+import org.greencheek.logging.disruptor.io.LogEventHandler;
+import org.greencheek.logging.disruptor.io.LogFileWriter;
+import org.greencheek.logging.domin.AccessLogEvent;
+import org.greencheek.logging.domin.ResizableByteBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the consumer side of the ring buffer: {@link LogEventHandler#onEvent}
+ * encoding a rendered line (when the encoding is not UTF-8), copying it into the
+ * page, and writing full pages to the log file; or with <code>gathering</code>, writing
+ * the lines straight from the slots with a gathering write.  Every <code>batchSize</code>'th
+ * event is the end of a batch, each event of a batch having its own slot.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogEventHandlerBenchmark {
+
+    @Param({"UTF-8", "ISO-8859-1"})
+    public String encoding;
+
+    @Param({"RANDOM_ACCESS_FILE", "MEMORY_MAPPED"})
+    public String writer;
+
+    @Param({"NONE", "GZIP"})
+    public String compression;
+
+    @Param({"1", "64"})
+    public int batchSize;
+
+    @Param({"false", "true"})
+    public boolean gathering;
+
+    private LogEventHandler handler;
+    private AccessLogEvent[] events;
+    private byte[] line;
+    private long sequence;
+    private File directory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = createTempDirectory();
+        handler = new LogEventHandler(
+                StringManager.getManager(Constants.Package), encoding,
+                LogFactory.getLog(LogEventHandlerBenchmark.class), "yyyy-MM-dd",
+                directory.getAbsolutePath(), true, false,
+                false, 64 * 1024, 64 * 1024 * 1024, ".log", "benchmark.", false,
+                LogFileWriter.WRITER_TYPE.valueOf(writer), 16 * 1024 * 1024, 1000,
+                LogFileWriter.COMPRESSION_TYPE.valueOf(compression), 1, 256 * 1024,
+                0, 0, false);
+        handler.setGatheringWrites(gathering, 1024);
+
+        RequestFixture fixture = new RequestFixture();
+        BenchmarkAccessLogValve valve = new BenchmarkAccessLogValve();
+        valve.setPattern("combined");
+        ResizableByteBuffer rendered = new ResizableByteBuffer(1024);
+        for(org.greencheek.logging.accesscomponents.AccessLogElement element : valve.getLogElements()) {
+            element.addElement(rendered, System.currentTimeMillis(), fixture.request, fixture.response, 1234);
+        }
+        line = new byte[rendered.size()];
+        System.arraycopy(rendered.getBuf(), 0, line, 0, line.length);
+        events = new AccessLogEvent[batchSize];
+        for(int i=0;i<batchSize;i++) {
+            events[i] = new AccessLogEvent(1024);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        handler.shutdown();
+        File[] files = directory.listFiles();
+        if(files!=null) {
+            for(File f : files) {
+                f.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public void onEvent() throws Exception {
+        // onEvent resets the slot, as the slot is reused by the ring buffer
+        long seq = sequence++;
+        AccessLogEvent event = events[(int) (seq % batchSize)];
+        event.putByteArrayByOffsetWithResize(line, 0, line.length);
+        handler.onEvent(event, seq, (seq % batchSize) == batchSize - 1);
+    }
+
+    private static File createTempDirectory() throws IOException {
+        File file = File.createTempFile("accesslog-benchmark", "");
+        if(!file.delete() || !file.mkdir()) {
+            throw new IOException("Unable to create temp directory:" + file);
+        }
+        return file;
+    }
+}
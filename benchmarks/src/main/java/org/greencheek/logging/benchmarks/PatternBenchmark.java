@@ -0,0 +1,96 @@
+package org.greencheek.logging.benchmarks;
+
+import org.greencheek.logging.accesscomponents.AccessLogElement;
+import org.greencheek.logging.disruptor.CapturedEventRenderer;
+import org.greencheek.logging.disruptor.LogMessageEventTranslator;
+import org.greencheek.logging.domin.AccessLogEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the <code>common</code> and <code>combined</code> patterns into log
+ * elements, and the rendering of a whole line from those elements; as the
+ * translator does when a log message is published.  In capture mode, the cost on
+ * the request thread (capture) and on the render stage (render) are measured separately.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatternBenchmark {
+
+    @Param({"common", "combined"})
+    public String pattern;
+
+    private BenchmarkAccessLogValve valve;
+    private LogMessageEventTranslator translator;
+    private LogMessageEventTranslator capturingTranslator;
+    private AccessLogEvent captured;
+    private RequestFixture fixture;
+    private AccessLogEvent buffer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        valve = new BenchmarkAccessLogValve();
+        valve.setPattern(pattern);
+        fixture = new RequestFixture();
+        buffer = new AccessLogEvent(1024);
+        translator = new LogMessageEventTranslator();
+        translator.setLogElements(valve.getLogElements());
+        translator.setRequest(fixture.request);
+        translator.setResponse(fixture.response);
+        translator.setTime(1234);
+
+        capturingTranslator = new LogMessageEventTranslator();
+        capturingTranslator.setLogElements(valve.getLogElements());
+        capturingTranslator.setRequest(fixture.request);
+        capturingTranslator.setResponse(fixture.response);
+        capturingTranslator.setTime(1234);
+        capturingTranslator.setCaptureMode(true);
+        captured = new AccessLogEvent(1024);
+    }
+
+    @Benchmark
+    public AccessLogElement[] createLogElements() {
+        return valve.createLogElementsForPattern();
+    }
+
+    @Benchmark
+    public AccessLogEvent renderLine() {
+        buffer.reset();
+        translator.setLogDate(System.currentTimeMillis());
+        translator.translateTo(buffer, 0);
+        return buffer;
+    }
+
+    @Benchmark
+    public AccessLogEvent captureLine() {
+        buffer.reset();
+        capturingTranslator.setLogDate(System.currentTimeMillis());
+        capturingTranslator.translateTo(buffer, 0);
+        return buffer;
+    }
+
+    @Benchmark
+    public AccessLogEvent captureAndRenderLine() {
+        captured.reset();
+        capturingTranslator.setLogDate(System.currentTimeMillis());
+        capturingTranslator.translateTo(captured, 0);
+        CapturedEventRenderer.render(captured);
+        return captured;
+    }
+}
@@ -0,0 +1,95 @@
+package org.greencheek.logging.benchmarks;
+
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.coyote.OutputBuffer;
+import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.buf.MessageBytes;
+import org.apache.tomcat.util.http.MimeHeaders;
+
+import java.nio.charset.Charset;
+
+/**
+ * A catalina request/response pair, backed by coyote objects, that is populated
+ * with the values of a typical GET request; so that the access log elements have
+ * something realistic to copy.  Each thread should have its own fixture.
+ */
+public class RequestFixture {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    public final Request request;
+    public final Response response;
+    private final org.apache.coyote.Request coyoteRequest;
+    private final org.apache.coyote.Response coyoteResponse;
+    private int requestNumber;
+
+    public RequestFixture() {
+        coyoteRequest = new org.apache.coyote.Request();
+        coyoteResponse = new org.apache.coyote.Response();
+        coyoteRequest.setResponse(coyoteResponse);
+        coyoteResponse.setOutputBuffer(new OutputBuffer() {
+            @Override
+            public int doWrite(ByteChunk chunk, org.apache.coyote.Response response) {
+                return chunk.getLength();
+            }
+
+            @Override
+            public long getBytesWritten() {
+                return 5123;
+            }
+        });
+
+        request = new Request();
+        request.setConnector(new Connector());
+        request.setCoyoteRequest(coyoteRequest);
+        response = new Response();
+        response.setConnector(new Connector());
+        response.setCoyoteResponse(coyoteResponse);
+        response.setRequest(request);
+        request.setResponse(response);
+        populate();
+    }
+
+    /**
+     * Sets the request fields; the request uri changes on each call so that
+     * the lines are not all identical.
+     */
+    public void populate() {
+        coyoteRequest.recycle();
+        setBytes(coyoteRequest.method(), "GET");
+        setBytes(coyoteRequest.requestURI(), "/content/articles/" + (requestNumber++ & 1023) + "/index.html");
+        setBytes(coyoteRequest.queryString(), "page=2&sort=desc");
+        setBytes(coyoteRequest.protocol(), "HTTP/1.1");
+        setBytes(coyoteRequest.serverName(), "www.example.com");
+        setBytes(coyoteRequest.remoteAddr(), "192.168.10.112");
+        setBytes(coyoteRequest.remoteHost(), "192.168.10.112");
+        setBytes(coyoteRequest.localAddr(), "10.0.0.5");
+        coyoteRequest.setLocalPort(8080);
+        coyoteRequest.setStartTime(System.currentTimeMillis());
+        coyoteRequest.setAttribute("benchmark", "attribute-value");
+        coyoteRequest.getRequestProcessor().setWorkerThreadName(Thread.currentThread().getName());
+
+        MimeHeaders headers = coyoteRequest.getMimeHeaders();
+        setBytes(headers.addValue("Host"), "www.example.com");
+        setBytes(headers.addValue("User-Agent"), "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/30.0.1599.101 Safari/537.36");
+        setBytes(headers.addValue("Referer"), "http://www.example.com/content/articles/index.html");
+        setBytes(headers.addValue("Accept"), "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8");
+        setBytes(headers.addValue("Cookie"), "JSESSIONID=5A1B2C3D4E5F60718293A4B5C6D7E8F9; theme=dark");
+
+        coyoteResponse.recycle();
+        coyoteResponse.setStatus(200);
+        coyoteResponse.setContentType("text/html;charset=UTF-8");
+        coyoteResponse.addHeader("Cache-Control", "max-age=60");
+        coyoteResponse.setCommitted(true);
+    }
+
+    /**
+     * The connectors set the request fields as bytes, straight from the input buffer
+     */
+    private static void setBytes(MessageBytes mb, String value) {
+        byte[] bytes = value.getBytes(ISO_8859_1);
+        mb.setBytes(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,116 @@
+package org.greencheek.logging.benchmarks;
+
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.core.StandardEngine;
+import org.greencheek.catalina.valves.DisruptorAccessLogValve;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end throughput of {@link DisruptorAccessLogValve#log}: rendering of the
+ * line on the request thread, publishing to the ring buffer, and the consumer
+ * writing to the log file; for each wait strategy, ring buffer size, number of shards,
+ * and with a ring buffer per producer.
+ *
+ * The number of producer threads is set with JMH's <code>-t</code> option, or
+ * by running {@link BenchmarkRunner} which runs this benchmark at 1, 4, 16 and 64 threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValveThroughputBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ValveState {
+
+        @Param({"sleeping", "yielding", "blocking", "busy"})
+        public String waitStrategy;
+
+        @Param({"4096", "262144"})
+        public int bufferSize;
+
+        @Param({"1", "4"})
+        public int shards;
+
+        @Param({"false", "true"})
+        public boolean perProducerRings;
+
+        @Param({"0", "2"})
+        public int formatterThreads;
+
+        @Param({"combined"})
+        public String pattern;
+
+        @Param({"text", "binary"})
+        public String logFormat;
+
+        public DisruptorAccessLogValve valve;
+        private File directory;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            directory = File.createTempFile("accesslog-benchmark", "");
+            if(!directory.delete() || !directory.mkdir()) {
+                throw new IOException("Unable to create temp directory:" + directory);
+            }
+            valve = new DisruptorAccessLogValve();
+            valve.setDirectory(directory.getAbsolutePath());
+            valve.setPattern(pattern);
+            valve.setWaitStrategy(waitStrategy);
+            valve.setBufferSize(bufferSize);
+            valve.setShards(shards);
+            valve.setPerProducerRings(perProducerRings);
+            valve.setFormatterThreads(formatterThreads);
+            valve.setLogFormat(logFormat);
+
+            StandardEngine engine = new StandardEngine();
+            engine.setName("Catalina");
+            engine.getPipeline().addValve(valve);
+            valve.start();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws LifecycleException {
+            valve.stop();
+            File[] files = directory.listFiles();
+            if(files!=null) {
+                for(File f : files) {
+                    f.delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class RequestState {
+        public RequestFixture fixture;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            fixture = new RequestFixture();
+        }
+    }
+
+    @Benchmark
+    public void log(ValveState valveState, RequestState requestState) {
+        valveState.valve.log(requestState.fixture.request, requestState.fixture.response, 1234);
+    }
+}
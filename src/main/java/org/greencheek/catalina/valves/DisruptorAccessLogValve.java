@@ -1,21 +1,25 @@
 package org.greencheek.catalina.valves;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletException;
 
 import com.lmax.disruptor.EventFactory;
 import com.lmax.disruptor.EventHandler;
 import com.lmax.disruptor.IgnoreExceptionHandler;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.TimeoutException;
 import com.lmax.disruptor.dsl.Disruptor;
 import com.lmax.disruptor.dsl.ProducerType;
 import org.apache.catalina.AccessLog;
@@ -27,13 +31,29 @@ import org.apache.catalina.valves.Constants;
 import org.apache.catalina.valves.ValveBase;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
+import org.greencheek.util.CachedClock;
+import org.greencheek.util.FastDatePrinter;
+import org.greencheek.util.LatencyHistogram;
+import org.greencheek.util.SharedDateFormat;
+import org.greencheek.util.StripedCounter;
 import org.greencheek.util.Util;
 import org.greencheek.logging.accesscomponents.*;
+import org.greencheek.logging.binary.BinaryAccessLogFormat;
+import org.greencheek.logging.binary.BinaryRecordEncoder;
+import org.greencheek.logging.disruptor.CapturedEventRenderer;
 import org.greencheek.logging.disruptor.DefaultWaitStrategyFactory;
+import org.greencheek.logging.disruptor.DroppingOverflowHandler;
 import org.greencheek.logging.disruptor.LogMessageEventTranslator;
+import org.greencheek.logging.disruptor.OverflowHandler;
+import org.greencheek.logging.disruptor.PerProducerRingTransport;
 import org.greencheek.logging.disruptor.WaitStrategyFactory;
-import org.greencheek.logging.domin.ResizableCharBuffer;
+import org.greencheek.logging.domin.AccessLogEvent;
+import org.greencheek.logging.domin.OffHeapSlotArena;
+import org.greencheek.logging.domin.OverflowArena;
+import org.greencheek.logging.domin.SlotSizing;
+import org.greencheek.logging.domin.ResizableByteBuffer;
 
+import static java.util.concurrent.Executors.newFixedThreadPool;
 import static java.util.concurrent.Executors.newSingleThreadExecutor;
 
 import org.greencheek.logging.disruptor.io.*;
@@ -112,9 +132,10 @@ import org.greencheek.logging.disruptor.io.*;
  *
  * <p>
  * For UNIX users, another field called <code>checkExists</code> is also
- * available. If set to true, the log file's existence will be checked before
- * each logging. This way an external log rotator can move the file
- * somewhere and Tomcat will start with a new file.
+ * available. If set to true, the log file's existence (and size) will be checked
+ * each time the background process runs, and when no requests are being logged.
+ * This way an external log rotator can move the file somewhere and Tomcat will
+ * start with a new file.
  * </p>
  *
  * <p>
@@ -153,21 +174,79 @@ public class DisruptorAccessLogValve extends ValveBase implements AccessLog {
 
     private static final Log log = LogFactory.getLog(DisruptorAccessLogValve.class);
 
-    private final ExecutorService executorService = newSingleThreadExecutor();
-    private Disruptor<ResizableCharBuffer> disruptor;
+    private ExecutorService executorService;
+
+    // One ring buffer, and one thread writing to a log file, per shard.
+    private Disruptor<AccessLogEvent>[] disruptors;
+    private RingBuffer<AccessLogEvent>[] ringBuffers;
+    LogEventHandler[] eventHandlers;
 
     // the size of the ring buffer for storing log messages
-    // This is about 22mb (less than.  A ResizeableCharBuffer, that is 256 chars in size
-    // is 680 bytes in size.
+    // This is about 12mb.  A ResizableByteBuffer, that is 256 bytes in size
+    // is roughly 400 bytes in size (the array plus the padding either side).
+    // When sharded, the buffer is split evenly between the shards
     private int bufferSize = 32768;
 
-    private WaitStrategyFactory waitStrategyFactory = new DefaultWaitStrategyFactory(DefaultWaitStrategyFactory.WAIT_STRATEGY_TYPE.SLEEPING);
+    // The number of shards.  Each shard has its own ring buffer and thread
+    // writing to its own log file (the suffix has .shard-N appended).  A request
+    // thread always logs to the same shard.
+    private int shards = 1;
+
+    // Instead of one ring buffer that all request threads publish to, each
+    // request thread has its own single producer ring buffer of producerBufferSize;
+    // all of which are drained by the one thread writing to the log file.
+    // Shards are not used when set.
+    private boolean perProducerRings = false;
+    private int producerBufferSize = 256;
+    // When using per producer ring buffers, write the log lines in order of
+    // the request's log date, rather than draining each ring buffer in turn.
+    private boolean orderByDate = false;
+    private PerProducerRingTransport producerRings;
+
+    // When set the request thread only captures the values of the log line,
+    // the line is formatted by a separate stage (thread) before being written
+    // to the log file.
+    private boolean captureMode = false;
+
+    // Write lines of text in the pattern's format, or compact binary records
+    // (see BinaryAccessLogFormat) which can be decoded to the common or combined format.
+    private BinaryAccessLogFormat.LOG_FORMAT_TYPE logFormatType = BinaryAccessLogFormat.LOG_FORMAT_TYPE.TEXT;
+    private String logFormat = "text";
+    // the elements captured for a binary record, null when writing text
+    private AccessLogElement[] binaryElements = null;
+
+    // The number of threads formatting (rendering and encoding) log lines
+    // in parallel, ahead of the thread writing to the log file.  0 for none.
+    private int formatterThreads = 0;
+
+    private DefaultWaitStrategyFactory.WAIT_STRATEGY_TYPE waitStrategyType = DefaultWaitStrategyFactory.WAIT_STRATEGY_TYPE.SLEEPING;
     private String waitStrategy;
-    LogEventHandler eventHandler;
 
     // The size of a message.
     private int messageSize = 256;
 
+    // Size the ring buffer slots from the lengths of the lines logged; messageSize being
+    // the initial size.  Slots are sized to hold the given percentile of the line lengths,
+    // and are shrunk back once used if they have grown beyond maxRetainedSlotSize.
+    // Off by default, the slots then grow once to the longest line they have held.
+    private boolean adaptiveSlotSizing = false;
+    private double slotSizePercentile = 99;
+    private int maxRetainedSlotSize = 8192;
+    // Lines that outgrow their slot borrow one of these buffers, rather than growing the slot
+    private int overflowArenaBuffers = 16;
+    private int overflowArenaBufferSize = 65536;
+    private OverflowArena overflowArena;
+    // one for each ring buffer's consumer, so that the consumers do not contend on the counts
+    private volatile SlotSizing[] slotSizings = new SlotSizing[0];
+
+    // Hold the rendered log lines in a direct (off heap) slab, of fixed size slots, rather
+    // than in heap buffers; written to the log file straight from the slab, with a gathering
+    // write per batch.  Only used for lines of UTF-8 text, rendered by the request thread,
+    // published to the shared ring buffer(s); lines longer than a slot are held on the heap.
+    private boolean offHeapSlots = false;
+    private int offHeapSlotSize = 512;
+    private boolean offHeapSlotsInUse = false;
+
     // The page size of the os.  The size of the buffer
     // before an io write is committed
     private int ioPageSize = 4096;
@@ -175,6 +254,124 @@ public class DisruptorAccessLogValve extends ValveBase implements AccessLog {
     // PreAllocate 100 mb access log file
     private int ioPreallocatedFileSize = 1024*1024*100;
 
+    // Preallocate by setting the file's length, rather than writing blank pages
+    private boolean ioPreallocateSparse = false;
+
+    // Preallocate the next log file ahead of time, on a background thread,
+    // rather than when the log file is rotated.  Only if rotatable or checkExists is set.
+    private boolean ioPreallocateAhead = true;
+    private FilePreallocator filePreallocator;
+
+    // The interval, in millis, at which the coarse clock read by the log writers is updated
+    private int clockResolution = 10;
+    private CachedClock clock;
+
+    // Start a new log file once the current one reaches this size, 0 for no limit
+    private long rotateMaxFileSize = 0;
+
+    // Rotate the log file every given number of minutes, rather than when
+    // the date stamp changes; 0 for none.
+    private int rotationInterval = 0;
+
+    // How the log file is written to, either via a RandomAccessFile
+    // or by memory mapping the file
+    private LogFileWriter.WRITER_TYPE ioWriterType = LogFileWriter.WRITER_TYPE.RANDOM_ACCESS_FILE;
+    private String ioWriter;
+
+    // The size of the region of the file that is mapped into memory
+    // when memory mapped writing is used.
+    private int ioMappedWindowSize = 1024*1024*16;
+
+    // Whether the log file is gzip compressed; a frame at a time, each frame
+    // being a block of log data, with an index of the frames alongside the log file.
+    private LogFileWriter.COMPRESSION_TYPE ioCompressionType = LogFileWriter.COMPRESSION_TYPE.NONE;
+    private String ioCompression;
+    private int ioCompressionLevel = 1;
+    private int ioCompressionBlockSize = 1024*256;
+
+    // Gzip log files in the background once they have been rotated, reading
+    // them at no more than the given rate.
+    private boolean compressRotatedFiles = false;
+    private long compressRotatedMaxBytesPerSecond = 1024*1024*8;
+    private int compressRotatedQueueSize = 16;
+    private RotatedFileCompressor rotatedFileCompressor;
+
+    // The max amount of time (millis) that log lines sit in a partially
+    // filled page before being written.  This is also the amount of time
+    // the consumer waits for a log message, before writing the partially
+    // filled page.
+    private long ioMaxFlushLatency = 1000;
+
+    // Write the lines of a batch straight from the ring buffer slots, with one gathering
+    // write of up to ioMaxGatheredLines lines, rather than copying them into pages.  Lines
+    // are then written at the end of every batch, rather than held for ioMaxFlushLatency.
+    // Lines in off heap slots are always written this way.  Not used with per producer rings.
+    private boolean ioGatheringWrites = false;
+    private int ioMaxGatheredLines = 1024;
+
+    // Where the log lines are written: "file" (the default); "syslog-udp", as RFC 5424
+    // syslog messages in UDP datagrams; "tcp" or "unix", streamed to a log agent over TCP or
+    // a unix domain socket (Java 16+), as syslog messages framed by octet counting or, if
+    // sinkSyslogFraming is false, the lines as they are.  Each shard has its own socket.
+    // Lines are held in a backlog of sinkBacklogSize bytes while the agent cannot take
+    // them, reconnecting after a backoff that doubles from the min to the max.  Binary
+    // records are always written to the log file.
+    private String sink = "file";
+    private AccessLogSink.SINK_TYPE sinkType = AccessLogSink.SINK_TYPE.FILE;
+    private String sinkHost = "127.0.0.1";
+    private int sinkPort = 514;
+    private String sinkPath = null;
+    private boolean sinkSyslogFraming = true;
+    private int sinkBacklogSize = 1024 * 1024;
+    private long sinkReconnectMinBackoff = 100;
+    private long sinkReconnectMaxBackoff = 30000;
+    // local0, informational
+    private int syslogFacility = 16;
+    private int syslogSeverity = 6;
+    // null for the local host's name
+    private String syslogHostname = null;
+    private String syslogAppName = "tomcat";
+    private int syslogMaxMessageSize = 8192;
+
+    // What to do with a log message when the ring buffer is full.
+    private OverflowHandler.OVERFLOW_POLICY_TYPE overflowPolicyType = OverflowHandler.OVERFLOW_POLICY_TYPE.BLOCK;
+    private String overflowPolicy;
+
+    // Deals with log messages that do not fit in the ring buffer, null
+    // if the request thread is to wait for space in the ring buffer
+    private OverflowHandler overflowHandler;
+
+    // When log messages are dropped, the minimum number of millis
+    // between the lines written to the log saying how many have been dropped
+    private long overflowSummaryInterval = 10000;
+
+    // The max amount of time (millis) to wait on stop, for the log messages
+    // in the ring buffer to be written.
+    private long shutdownDrainTimeout = 10000;
+
+    // Number of log messages published to the ring buffer, or passed to the
+    // overflow handler.  Striped as it is incremented by every request thread.
+    private final StripedCounter eventsPublished = new StripedCounter();
+
+    // Rates, calculated each time the background process runs
+    private volatile long eventsPublishedPerSecond;
+    private volatile long eventsWrittenPerSecond;
+    private long lastRateCalculation;
+    private long lastEventsPublished;
+    private long lastEventsWritten;
+
+    // Whether the time from a log message being published, to it being written
+    // to the file is recorded; along with the time taken to render the message.
+    private boolean recordLatency = false;
+
+    // If set (and latency is being recorded), the latency percentiles for each
+    // background process interval are appended to this file.  Relative to the log directory
+    private String latencyLogFile = null;
+    private LatencyHistogram.Snapshot lastPublishToWriteSnapshot;
+    private LatencyHistogram.Snapshot lastTranslateSnapshot;
+    private final FastDatePrinter latencyLogDateFormat =
+            new FastDatePrinter("yyyy-MM-dd'T'HH:mm:ss.SSSZ", TimeZone.getDefault(), Locale.US);
+
 
     //------------------------------------------------------ Constructor
     public DisruptorAccessLogValve() {
@@ -245,12 +442,6 @@ public class DisruptorAccessLogValve extends ValveBase implements AccessLog {
     protected String suffix = "";
 
 
-    /**
-     * The PrintWriter to which we are currently logging, if any.
-     */
-    protected PrintWriter writer = null;
-
-
     /**
      * A date formatter to format a Date using the format
      * given by <code>fileDateFormat</code>.
@@ -278,8 +469,8 @@ public class DisruptorAccessLogValve extends ValveBase implements AccessLog {
 
 
     /**
-     * The disruptor translators used for copying into the ResizableCharBuffer
-     * from the ring buffer.
+     * The disruptor translators used for writing the log line into the
+     * ResizableByteBuffer from the ring buffer.
      */
     private static final ThreadLocal<LogMessageEventTranslator> logEventTranslator = new ThreadLocal<LogMessageEventTranslator>() {
         @Override
@@ -374,6 +565,601 @@ public class DisruptorAccessLogValve extends ValveBase implements AccessLog {
         this.ioPageSize = ioPageSize;
     }
 
+    public String getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(String overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        if(overflowPolicy.contains("spill")) {
+            overflowPolicyType = OverflowHandler.OVERFLOW_POLICY_TYPE.SPILL;
+        }
+        else if(overflowPolicy.contains("summary") || overflowPolicy.contains("sample")) {
+            overflowPolicyType = OverflowHandler.OVERFLOW_POLICY_TYPE.DROP_WITH_SUMMARY;
+        }
+        else if(overflowPolicy.contains("drop")) {
+            overflowPolicyType = OverflowHandler.OVERFLOW_POLICY_TYPE.DROP;
+        }
+        else {
+            overflowPolicyType = OverflowHandler.OVERFLOW_POLICY_TYPE.BLOCK;
+        }
+    }
+
+    public long getOverflowSummaryInterval() {
+        return overflowSummaryInterval;
+    }
+
+    public void setOverflowSummaryInterval(long overflowSummaryInterval) {
+        this.overflowSummaryInterval = overflowSummaryInterval;
+    }
+
+    /**
+     * The number of log messages that did not fit in the ring buffer, and were
+     * either dropped or written to the overflow file; depending on the overflow policy.
+     */
+    public long getOverflowCount() {
+        OverflowHandler handler = overflowHandler;
+        return handler == null ? 0 : handler.getOverflowCount();
+    }
+
+    /**
+     * Of the overflow count, the number of log messages that were lost as the overflow
+     * handler failed to deal with them; such as those that could not be written to the
+     * overflow file.
+     */
+    public long getOverflowFailures() {
+        OverflowHandler handler = overflowHandler;
+        return handler == null ? 0 : handler.getFailedCount();
+    }
+
+    /**
+     * The number of free slots in the ring buffer
+     */
+    public long getRingBufferRemainingCapacity() {
+        PerProducerRingTransport transport = producerRings;
+        if (transport != null) {
+            return transport.remainingCapacity();
+        }
+        RingBuffer<AccessLogEvent>[] rbs = ringBuffers;
+        if (rbs == null) {
+            return bufferSize;
+        }
+        long remaining = 0;
+        for (RingBuffer<AccessLogEvent> rb : rbs) {
+            remaining += rb.remainingCapacity();
+        }
+        return remaining;
+    }
+
+    /**
+     * The number of log messages that have been published to the ring buffer, but
+     * not yet processed by the thread writing to the log file.
+     */
+    public long getRingBufferLag() {
+        PerProducerRingTransport transport = producerRings;
+        if (transport != null) {
+            return transport.lag();
+        }
+        RingBuffer<AccessLogEvent>[] rbs = ringBuffers;
+        if (rbs == null) {
+            return 0;
+        }
+        long lag = 0;
+        for (RingBuffer<AccessLogEvent> rb : rbs) {
+            lag += rb.getCursor() - rb.getMinimumGatingSequence();
+        }
+        return lag;
+    }
+
+    /**
+     * The number of log messages placed on the ring buffer; not counting those that did not
+     * fit, see {@link #getOverflowCount()}.
+     */
+    public long getEventsPublished() {
+        return eventsPublished.sum();
+    }
+
+    public long getEventsPublishedPerSecond() {
+        return eventsPublishedPerSecond;
+    }
+
+    public long getEventsWritten() {
+        long total = 0;
+        for (LogEventHandler handler : getEventHandlers()) {
+            total += handler.getEventsWritten();
+        }
+        return total;
+    }
+
+    public long getEventsWrittenPerSecond() {
+        return eventsWrittenPerSecond;
+    }
+
+    public long getBytesWritten() {
+        long total = 0;
+        for (LogEventHandler handler : getEventHandlers()) {
+            total += handler.getBytesWritten();
+        }
+        return total;
+    }
+
+    public long getEncodeFailures() {
+        long total = 0;
+        for (LogEventHandler handler : getEventHandlers()) {
+            total += handler.getEncodeFailures();
+        }
+        return total;
+    }
+
+    public long getPagesFlushed() {
+        long total = 0;
+        for (LogEventHandler handler : getEventHandlers()) {
+            total += handler.getPagesFlushed();
+        }
+        return total;
+    }
+
+    public long getGatheringWrites() {
+        long total = 0;
+        for (LogEventHandler handler : getEventHandlers()) {
+            total += handler.getGatheringWrites();
+        }
+        return total;
+    }
+
+    public long getRotatedFilesCompressed() {
+        RotatedFileCompressor compressor = rotatedFileCompressor;
+        return compressor == null ? 0 : compressor.getFilesCompressed();
+    }
+
+    public int getRotatedFilesPending() {
+        RotatedFileCompressor compressor = rotatedFileCompressor;
+        return compressor == null ? 0 : compressor.getFilesPending();
+    }
+
+    public long getRotationCount() {
+        long total = 0;
+        for (LogEventHandler handler : getEventHandlers()) {
+            total += handler.getRotations();
+        }
+        return total;
+    }
+
+    /**
+     * The total number of millis spent writing to the log file
+     */
+    public long getWriteTimeMillis() {
+        long nanos = 0;
+        for (LogEventHandler handler : getEventHandlers()) {
+            nanos += handler.getWriteNanos();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private LogEventHandler[] getEventHandlers() {
+        LogEventHandler[] handlers = eventHandlers;
+        return handlers == null ? new LogEventHandler[0] : handlers;
+    }
+
+    public boolean getPerProducerRings() {
+        return perProducerRings;
+    }
+
+    public void setPerProducerRings(boolean perProducerRings) {
+        this.perProducerRings = perProducerRings;
+    }
+
+    public int getProducerBufferSize() {
+        return producerBufferSize;
+    }
+
+    public void setProducerBufferSize(int producerBufferSize) {
+        this.producerBufferSize = producerBufferSize;
+    }
+
+    public boolean getOrderByDate() {
+        return orderByDate;
+    }
+
+    public void setOrderByDate(boolean orderByDate) {
+        this.orderByDate = orderByDate;
+    }
+
+    /**
+     * The number of request threads that have their own ring buffer
+     */
+    public int getProducerCount() {
+        PerProducerRingTransport transport = producerRings;
+        return transport == null ? 0 : transport.getProducerCount();
+    }
+
+    public boolean getCaptureMode() {
+        return captureMode;
+    }
+
+    public void setCaptureMode(boolean captureMode) {
+        this.captureMode = captureMode;
+    }
+
+    public String getLogFormat() {
+        return logFormat;
+    }
+
+    public void setLogFormat(String logFormat) {
+        this.logFormat = logFormat;
+        if(logFormat.contains("binary")) {
+            logFormatType = BinaryAccessLogFormat.LOG_FORMAT_TYPE.BINARY;
+        }
+        else {
+            logFormatType = BinaryAccessLogFormat.LOG_FORMAT_TYPE.TEXT;
+        }
+    }
+
+    public int getFormatterThreads() {
+        return formatterThreads;
+    }
+
+    public void setFormatterThreads(int formatterThreads) {
+        this.formatterThreads = Math.max(0, formatterThreads);
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public void setShards(int shards) {
+        this.shards = Math.max(1, shards);
+    }
+
+    public boolean getRecordLatency() {
+        return recordLatency;
+    }
+
+    public void setRecordLatency(boolean recordLatency) {
+        this.recordLatency = recordLatency;
+    }
+
+    public String getLatencyLogFile() {
+        return latencyLogFile;
+    }
+
+    public void setLatencyLogFile(String latencyLogFile) {
+        this.latencyLogFile = latencyLogFile;
+    }
+
+    public long getPublishToWriteLatencyP50Micros() {
+        return latencyAtPercentileMicros(true, 50);
+    }
+
+    public long getPublishToWriteLatencyP99Micros() {
+        return latencyAtPercentileMicros(true, 99);
+    }
+
+    public long getPublishToWriteLatencyP999Micros() {
+        return latencyAtPercentileMicros(true, 99.9);
+    }
+
+    public long getPublishToWriteLatencyMaxMicros() {
+        long max = 0;
+        for (LogEventHandler handler : getEventHandlers()) {
+            max = Math.max(max, handler.getPublishToWriteLatency().getMax());
+        }
+        return TimeUnit.NANOSECONDS.toMicros(max);
+    }
+
+    public long getTranslateLatencyP50Micros() {
+        return latencyAtPercentileMicros(false, 50);
+    }
+
+    public long getTranslateLatencyP99Micros() {
+        return latencyAtPercentileMicros(false, 99);
+    }
+
+    public long getTranslateLatencyP999Micros() {
+        return latencyAtPercentileMicros(false, 99.9);
+    }
+
+    public long getTranslateLatencyMaxMicros() {
+        long max = 0;
+        for (LogEventHandler handler : getEventHandlers()) {
+            max = Math.max(max, handler.getTranslateLatency().getMax());
+        }
+        return TimeUnit.NANOSECONDS.toMicros(max);
+    }
+
+    private long latencyAtPercentileMicros(boolean publishToWrite, double percentile) {
+        LatencyHistogram.Snapshot snapshot = latencySnapshot(getEventHandlers(), publishToWrite);
+        return snapshot == null ? 0 : TimeUnit.NANOSECONDS.toMicros(snapshot.getValueAtPercentile(percentile));
+    }
+
+    /**
+     * The latencies recorded by all the shards
+     */
+    private static LatencyHistogram.Snapshot latencySnapshot(LogEventHandler[] handlers, boolean publishToWrite) {
+        LatencyHistogram.Snapshot snapshot = null;
+        for (LogEventHandler handler : handlers) {
+            LatencyHistogram histogram = publishToWrite ? handler.getPublishToWriteLatency() : handler.getTranslateLatency();
+            snapshot = snapshot == null ? histogram.snapshot() : snapshot.plus(histogram.snapshot());
+        }
+        return snapshot;
+    }
+
+    public long getIoMaxFlushLatency() {
+        return ioMaxFlushLatency;
+    }
+
+    public void setIoMaxFlushLatency(long ioMaxFlushLatency) {
+        this.ioMaxFlushLatency = ioMaxFlushLatency;
+    }
+
+    public boolean isIoGatheringWrites() {
+        return ioGatheringWrites;
+    }
+
+    public void setIoGatheringWrites(boolean ioGatheringWrites) {
+        this.ioGatheringWrites = ioGatheringWrites;
+    }
+
+    public int getIoMaxGatheredLines() {
+        return ioMaxGatheredLines;
+    }
+
+    public void setIoMaxGatheredLines(int ioMaxGatheredLines) {
+        this.ioMaxGatheredLines = ioMaxGatheredLines;
+    }
+
+    public String getSink() {
+        return sink;
+    }
+
+    public void setSink(String sink) {
+        this.sink = sink;
+        if(sink.contains("unix")) {
+            sinkType = AccessLogSink.SINK_TYPE.UNIX_SOCKET;
+        }
+        else if(sink.contains("tcp")) {
+            sinkType = AccessLogSink.SINK_TYPE.TCP;
+        }
+        else if(sink.contains("udp") || sink.contains("syslog")) {
+            sinkType = AccessLogSink.SINK_TYPE.SYSLOG_UDP;
+        }
+        else {
+            sinkType = AccessLogSink.SINK_TYPE.FILE;
+        }
+    }
+
+    public String getSinkHost() {
+        return sinkHost;
+    }
+
+    public void setSinkHost(String sinkHost) {
+        this.sinkHost = sinkHost;
+    }
+
+    public int getSinkPort() {
+        return sinkPort;
+    }
+
+    public void setSinkPort(int sinkPort) {
+        this.sinkPort = sinkPort;
+    }
+
+    public String getSinkPath() {
+        return sinkPath;
+    }
+
+    public void setSinkPath(String sinkPath) {
+        this.sinkPath = sinkPath;
+    }
+
+    public boolean isSinkSyslogFraming() {
+        return sinkSyslogFraming;
+    }
+
+    public void setSinkSyslogFraming(boolean sinkSyslogFraming) {
+        this.sinkSyslogFraming = sinkSyslogFraming;
+    }
+
+    public int getSinkBacklogSize() {
+        return sinkBacklogSize;
+    }
+
+    public void setSinkBacklogSize(int sinkBacklogSize) {
+        this.sinkBacklogSize = sinkBacklogSize;
+    }
+
+    public long getSinkReconnectMinBackoff() {
+        return sinkReconnectMinBackoff;
+    }
+
+    public void setSinkReconnectMinBackoff(long sinkReconnectMinBackoff) {
+        this.sinkReconnectMinBackoff = sinkReconnectMinBackoff;
+    }
+
+    public long getSinkReconnectMaxBackoff() {
+        return sinkReconnectMaxBackoff;
+    }
+
+    public void setSinkReconnectMaxBackoff(long sinkReconnectMaxBackoff) {
+        this.sinkReconnectMaxBackoff = sinkReconnectMaxBackoff;
+    }
+
+    public int getSyslogFacility() {
+        return syslogFacility;
+    }
+
+    public void setSyslogFacility(int syslogFacility) {
+        this.syslogFacility = syslogFacility;
+    }
+
+    public int getSyslogSeverity() {
+        return syslogSeverity;
+    }
+
+    public void setSyslogSeverity(int syslogSeverity) {
+        this.syslogSeverity = syslogSeverity;
+    }
+
+    public String getSyslogHostname() {
+        return syslogHostname;
+    }
+
+    public void setSyslogHostname(String syslogHostname) {
+        this.syslogHostname = syslogHostname;
+    }
+
+    public String getSyslogAppName() {
+        return syslogAppName;
+    }
+
+    public void setSyslogAppName(String syslogAppName) {
+        this.syslogAppName = syslogAppName;
+    }
+
+    public int getSyslogMaxMessageSize() {
+        return syslogMaxMessageSize;
+    }
+
+    public void setSyslogMaxMessageSize(int syslogMaxMessageSize) {
+        this.syslogMaxMessageSize = syslogMaxMessageSize;
+    }
+
+    /**
+     * The number of bytes of log lines the sinks could not send, and dropped
+     */
+    public long getSinkBytesDropped() {
+        long total = 0;
+        for (LogEventHandler handler : getEventHandlers()) {
+            total += handler.getSink().getBytesDropped();
+        }
+        return total;
+    }
+
+    public long getShutdownDrainTimeout() {
+        return shutdownDrainTimeout;
+    }
+
+    public void setShutdownDrainTimeout(long shutdownDrainTimeout) {
+        this.shutdownDrainTimeout = shutdownDrainTimeout;
+    }
+
+    public int getIoMappedWindowSize() {
+        return ioMappedWindowSize;
+    }
+
+    public void setIoMappedWindowSize(int ioMappedWindowSize) {
+        this.ioMappedWindowSize = ioMappedWindowSize;
+    }
+
+    public String getIoCompression() {
+        return ioCompression;
+    }
+
+    public void setIoCompression(String ioCompression) {
+        this.ioCompression = ioCompression;
+        if(ioCompression.contains("gzip") || ioCompression.contains("deflate")) {
+            ioCompressionType = LogFileWriter.COMPRESSION_TYPE.GZIP;
+        } else {
+            ioCompressionType = LogFileWriter.COMPRESSION_TYPE.NONE;
+        }
+    }
+
+    public int getIoCompressionLevel() {
+        return ioCompressionLevel;
+    }
+
+    public void setIoCompressionLevel(int ioCompressionLevel) {
+        this.ioCompressionLevel = ioCompressionLevel;
+    }
+
+    public int getIoCompressionBlockSize() {
+        return ioCompressionBlockSize;
+    }
+
+    public void setIoCompressionBlockSize(int ioCompressionBlockSize) {
+        this.ioCompressionBlockSize = ioCompressionBlockSize;
+    }
+
+    public boolean isIoPreallocateSparse() {
+        return ioPreallocateSparse;
+    }
+
+    public void setIoPreallocateSparse(boolean ioPreallocateSparse) {
+        this.ioPreallocateSparse = ioPreallocateSparse;
+    }
+
+    public int getClockResolution() {
+        return clockResolution;
+    }
+    public void setClockResolution(int clockResolution) {
+        this.clockResolution = clockResolution;
+    }
+    public boolean isIoPreallocateAhead() {
+        return ioPreallocateAhead;
+    }
+
+    public void setIoPreallocateAhead(boolean ioPreallocateAhead) {
+        this.ioPreallocateAhead = ioPreallocateAhead;
+    }
+
+    public long getRotateMaxFileSize() {
+        return rotateMaxFileSize;
+    }
+
+    public void setRotateMaxFileSize(long rotateMaxFileSize) {
+        this.rotateMaxFileSize = rotateMaxFileSize;
+    }
+
+    public int getRotationInterval() {
+        return rotationInterval;
+    }
+
+    /**
+     * Rotate the log file every given number of minutes.  The file date format
+     * needs to include the hour and minute, for the file names to differ; an error
+     * is logged on start if it does not.
+     */
+    public void setRotationInterval(int rotationInterval) {
+        this.rotationInterval = rotationInterval;
+    }
+
+    public boolean isCompressRotatedFiles() {
+        return compressRotatedFiles;
+    }
+
+    public void setCompressRotatedFiles(boolean compressRotatedFiles) {
+        this.compressRotatedFiles = compressRotatedFiles;
+    }
+
+    public long getCompressRotatedMaxBytesPerSecond() {
+        return compressRotatedMaxBytesPerSecond;
+    }
+
+    public void setCompressRotatedMaxBytesPerSecond(long compressRotatedMaxBytesPerSecond) {
+        this.compressRotatedMaxBytesPerSecond = compressRotatedMaxBytesPerSecond;
+    }
+
+    public int getCompressRotatedQueueSize() {
+        return compressRotatedQueueSize;
+    }
+
+    public void setCompressRotatedQueueSize(int compressRotatedQueueSize) {
+        this.compressRotatedQueueSize = compressRotatedQueueSize;
+    }
+
+    public String getIoWriter() {
+        return ioWriter;
+    }
+
+    public void setIoWriter(String ioWriter) {
+        this.ioWriter = ioWriter;
+        if(ioWriter.contains("map")) {
+            ioWriterType = LogFileWriter.WRITER_TYPE.MEMORY_MAPPED;
+        } else {
+            ioWriterType = LogFileWriter.WRITER_TYPE.RANDOM_ACCESS_FILE;
+        }
+    }
+
     public String getWaitStrategy() {
         return waitStrategy;
     }
@@ -381,19 +1167,19 @@ public class DisruptorAccessLogValve extends ValveBase implements AccessLog {
     public void setWaitStrategy(String waitStrategy) {
         this.waitStrategy = waitStrategy;
         if(waitStrategy.contains("yield")) {
-            waitStrategyFactory = new DefaultWaitStrategyFactory(DefaultWaitStrategyFactory.WAIT_STRATEGY_TYPE.YIELDING);
+            waitStrategyType = DefaultWaitStrategyFactory.WAIT_STRATEGY_TYPE.YIELDING;
         }
         else if(waitStrategy.contains("block")) {
-            waitStrategyFactory = new DefaultWaitStrategyFactory(DefaultWaitStrategyFactory.WAIT_STRATEGY_TYPE.BLOCKING);
+            waitStrategyType = DefaultWaitStrategyFactory.WAIT_STRATEGY_TYPE.BLOCKING;
         }
         else if(waitStrategy.contains("sleep")) {
-            waitStrategyFactory = new DefaultWaitStrategyFactory(DefaultWaitStrategyFactory.WAIT_STRATEGY_TYPE.SLEEPING);
+            waitStrategyType = DefaultWaitStrategyFactory.WAIT_STRATEGY_TYPE.SLEEPING;
         }
         else if (waitStrategy.contains("busy")) {
-            waitStrategyFactory = new DefaultWaitStrategyFactory(DefaultWaitStrategyFactory.WAIT_STRATEGY_TYPE.BUSY);
+            waitStrategyType = DefaultWaitStrategyFactory.WAIT_STRATEGY_TYPE.BUSY;
         }
         else {
-            waitStrategyFactory = new DefaultWaitStrategyFactory(DefaultWaitStrategyFactory.WAIT_STRATEGY_TYPE.YIELDING);
+            waitStrategyType = DefaultWaitStrategyFactory.WAIT_STRATEGY_TYPE.YIELDING;
         }
     }
 
@@ -413,6 +1199,115 @@ public class DisruptorAccessLogValve extends ValveBase implements AccessLog {
         this.messageSize = size;
     }
 
+    public boolean isAdaptiveSlotSizing() {
+        return adaptiveSlotSizing;
+    }
+
+    public void setAdaptiveSlotSizing(boolean adaptiveSlotSizing) {
+        this.adaptiveSlotSizing = adaptiveSlotSizing;
+    }
+
+    public double getSlotSizePercentile() {
+        return slotSizePercentile;
+    }
+
+    public void setSlotSizePercentile(double slotSizePercentile) {
+        this.slotSizePercentile = slotSizePercentile;
+    }
+
+    public int getMaxRetainedSlotSize() {
+        return maxRetainedSlotSize;
+    }
+
+    public void setMaxRetainedSlotSize(int maxRetainedSlotSize) {
+        this.maxRetainedSlotSize = maxRetainedSlotSize;
+    }
+
+    public boolean isOffHeapSlots() {
+        return offHeapSlots;
+    }
+
+    public void setOffHeapSlots(boolean offHeapSlots) {
+        this.offHeapSlots = offHeapSlots;
+    }
+
+    public int getOffHeapSlotSize() {
+        return offHeapSlotSize;
+    }
+
+    public void setOffHeapSlotSize(int offHeapSlotSize) {
+        this.offHeapSlotSize = offHeapSlotSize;
+    }
+
+    public int getOverflowArenaBuffers() {
+        return overflowArenaBuffers;
+    }
+
+    public void setOverflowArenaBuffers(int overflowArenaBuffers) {
+        this.overflowArenaBuffers = overflowArenaBuffers;
+    }
+
+    public int getOverflowArenaBufferSize() {
+        return overflowArenaBufferSize;
+    }
+
+    public void setOverflowArenaBufferSize(int overflowArenaBufferSize) {
+        this.overflowArenaBufferSize = overflowArenaBufferSize;
+    }
+
+    /**
+     * The size the ring buffer slots are resized to once used, learnt from the lines logged;
+     * the largest of the ring buffers, if sharded.
+     */
+    public int getSlotSize() {
+        SlotSizing[] sizings = slotSizings;
+        if (sizings.length == 0) {
+            return messageSize;
+        }
+        int size = 0;
+        for (SlotSizing sizing : sizings) {
+            size = Math.max(size, sizing.getSlotCapacity());
+        }
+        return size;
+    }
+
+    /**
+     * The number of lines that have borrowed a buffer from the overflow arena
+     */
+    public long getOverflowArenaBorrowed() {
+        OverflowArena arena = overflowArena;
+        return arena == null ? 0 : arena.getBorrowed();
+    }
+
+    /**
+     * @param slots the size of the ring buffer the events are created for
+     */
+    private EventFactory<AccessLogEvent> createEventFactory(int slots) {
+        if (offHeapSlotsInUse) {
+            final OffHeapSlotArena arena = new OffHeapSlotArena(slots, offHeapSlotSize, LogEventHandler.getLineEnding());
+            return new EventFactory<AccessLogEvent>() {
+                @Override
+                public AccessLogEvent newInstance() {
+                    return new AccessLogEvent(arena);
+                }
+            };
+        }
+        final SlotSizing sizing = adaptiveSlotSizing ?
+                new SlotSizing(messageSize, maxRetainedSlotSize, slotSizePercentile, overflowArena) : null;
+        if (sizing != null) {
+            SlotSizing[] sizings = Arrays.copyOf(slotSizings, slotSizings.length + 1);
+            sizings[slotSizings.length] = sizing;
+            slotSizings = sizings;
+        }
+        final int size = messageSize;
+        return new EventFactory<AccessLogEvent>() {
+            @Override
+            public AccessLogEvent newInstance() {
+                return sizing == null ? new AccessLogEvent(size) : new AccessLogEvent(sizing);
+            }
+        };
+    }
+
 
     /**
      * @return Returns the enabled.
@@ -500,7 +1395,7 @@ public class DisruptorAccessLogValve extends ValveBase implements AccessLog {
 
 
     /**
-     * Check for file existence before logging.
+     * Check for file existence periodically.
      */
     public boolean isCheckExists() {
 
@@ -510,7 +1405,8 @@ public class DisruptorAccessLogValve extends ValveBase implements AccessLog {
 
 
     /**
-     * Set whether to check for log file existence before logging.
+     * Set whether to check for log file existence periodically, in the
+     * background process.
      *
      * @param checkExists true meaning to check for file existence.
      */
@@ -779,12 +1675,90 @@ public class DisruptorAccessLogValve extends ValveBase implements AccessLog {
      */
     @Override
     public synchronized void backgroundProcess() {
-        if (getState().isAvailable() && getEnabled() && writer != null &&
-                buffered) {
-            writer.flush();
+        if (getState().isAvailable() && getEnabled() && buffered) {
+            for (LogEventHandler handler : getEventHandlers()) {
+                handler.requestFlush();
+            }
+        }
+        if (getState().isAvailable() && checkExists) {
+            for (LogEventHandler handler : getEventHandlers()) {
+                handler.requestExternalRotationCheck();
+            }
+        }
+        calculateRates();
+        if (recordLatency && latencyLogFile != null && eventHandlers != null) {
+            writeLatencyLog();
         }
     }
 
+    /**
+     * Appends a line to the latency log file with the percentiles of the latencies
+     * recorded since the last time the background process ran.
+     */
+    private void writeLatencyLog() {
+        LogEventHandler[] handlers = eventHandlers;
+        LatencyHistogram.Snapshot publishToWrite = latencySnapshot(handlers, true);
+        LatencyHistogram.Snapshot translate = latencySnapshot(handlers, false);
+        LatencyHistogram.Snapshot publishToWriteInterval = lastPublishToWriteSnapshot == null ?
+                publishToWrite : publishToWrite.since(lastPublishToWriteSnapshot);
+        LatencyHistogram.Snapshot translateInterval = lastTranslateSnapshot == null ?
+                translate : translate.since(lastTranslateSnapshot);
+        lastPublishToWriteSnapshot = publishToWrite;
+        lastTranslateSnapshot = translate;
+
+        StringBuilder line = new StringBuilder(256);
+        line.append(latencyLogDateFormat.format(System.currentTimeMillis()));
+        appendPercentiles(line.append(" publishToWrite"), publishToWriteInterval);
+        appendPercentiles(line.append(" translate"), translateInterval);
+        line.append(System.getProperty("line.separator"));
+
+        File file = new File(latencyLogFile);
+        if (!file.isAbsolute()) {
+            file = new File(handlers[0].getLogDirectory(), latencyLogFile);
+        }
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(file, true);
+            out.write(line.toString().getBytes(ResizableByteBuffer.UTF8));
+        } catch (IOException e) {
+            log.warn("Unable to write to latency log file:" + file, e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private static void appendPercentiles(StringBuilder line, LatencyHistogram.Snapshot snapshot) {
+        line.append(" count=").append(snapshot.getCount());
+        line.append(" p50=").append(TimeUnit.NANOSECONDS.toMicros(snapshot.getValueAtPercentile(50))).append("us");
+        line.append(" p99=").append(TimeUnit.NANOSECONDS.toMicros(snapshot.getValueAtPercentile(99))).append("us");
+        line.append(" p999=").append(TimeUnit.NANOSECONDS.toMicros(snapshot.getValueAtPercentile(99.9))).append("us");
+        line.append(" max=").append(TimeUnit.NANOSECONDS.toMicros(snapshot.getMax())).append("us");
+    }
+
+    /**
+     * Work out the number of log messages published and written per second,
+     * since the previous calculation.
+     */
+    private void calculateRates() {
+        long now = System.currentTimeMillis();
+        long published = getEventsPublished();
+        long written = getEventsWritten();
+        long elapsed = now - lastRateCalculation;
+        if (lastRateCalculation > 0 && elapsed > 0) {
+            eventsPublishedPerSecond = ((published - lastEventsPublished) * 1000) / elapsed;
+            eventsWrittenPerSecond = ((written - lastEventsWritten) * 1000) / elapsed;
+        }
+        lastRateCalculation = now;
+        lastEventsPublished = published;
+        lastEventsWritten = written;
+    }
+
     /**
      * Log a message summarizing the specified request and response, according
      * to the format specified by the <code>pattern</code> property.
@@ -826,7 +1800,26 @@ public class DisruptorAccessLogValve extends ValveBase implements AccessLog {
         translator.setRequest(request);
         translator.setResponse(response);
         translator.setTime(time);
-        disruptor.publishEvent(translator);
+        translator.setRecordLatency(recordLatency);
+        translator.setCaptureMode(captureMode);
+        translator.setBinaryElements(binaryElements);
+        RingBuffer<AccessLogEvent> ringBuffer;
+        PerProducerRingTransport transport = producerRings;
+        if (transport != null) {
+            ringBuffer = transport.ringFor(translator);
+        } else {
+            RingBuffer<AccessLogEvent>[] rbs = ringBuffers;
+            ringBuffer = rbs.length == 1 ? rbs[0] : rbs[translator.getProducerIndex() % rbs.length];
+        }
+        // only messages that make it onto a ring buffer are counted as published
+        if (overflowHandler == null) {
+            ringBuffer.publishEvent(translator);
+            eventsPublished.increment();
+        } else if (ringBuffer.tryPublishEvent(translator)) {
+            eventsPublished.increment();
+        } else {
+            overflowHandler.onOverflow(translator);
+        }
     }
 
 
@@ -875,31 +1868,203 @@ public class DisruptorAccessLogValve extends ValveBase implements AccessLog {
      *  that prevents this component from being used
      */
     @Override
+    @SuppressWarnings("unchecked")
     protected synchronized void startInternal() throws LifecycleException {
 
-        disruptor = new Disruptor<ResizableCharBuffer>(
-                new EventFactory<ResizableCharBuffer>() {
-                    @Override
-                    public ResizableCharBuffer newInstance() {
-                        return new ResizableCharBuffer(messageSize);
+        lastRateCalculation = 0;
+        lastPublishToWriteSnapshot = null;
+        lastTranslateSnapshot = null;
+        producerRings = null;
+        disruptors = null;
+        ringBuffers = null;
+        binaryElements = logFormatType == BinaryAccessLogFormat.LOG_FORMAT_TYPE.BINARY ?
+                BinaryAccessLogFormat.createElements(requestAttributesEnabled) : null;
+        // binary records are encoded by the log writer, there is nothing to format
+        boolean formatStage = binaryElements == null;
+        rotatedFileCompressor = null;
+        if (compressRotatedFiles) {
+            rotatedFileCompressor = new RotatedFileCompressor(compressRotatedQueueSize,
+                    compressRotatedMaxBytesPerSecond, log);
+            rotatedFileCompressor.start();
+        }
+        if (rotatable && rotationInterval > 0 &&
+                LogEventHandler.granularityOf(fileDateFormat) > TimeUnit.MINUTES.toMillis(rotationInterval)) {
+            // each interval would have the same date stamp, and so be written to the same file
+            log.error("The fileDateFormat " + fileDateFormat + " changes less often than the rotationInterval of " +
+                    rotationInterval + " minutes, so the log file will not be rotated on each interval." +
+                    " The format needs to include the hour and minute.");
+        }
+        filePreallocator = ioPreallocateAhead && ioPreallocatedFileSize > 0 && (rotatable || checkExists) ?
+                new FilePreallocator() : null;
+        overflowArena = adaptiveSlotSizing && overflowArenaBuffers > 0 ?
+                new OverflowArena(overflowArenaBuffers, overflowArenaBufferSize) : null;
+        slotSizings = new SlotSizing[0];
+        // the clock also has the common log format timestamp ready as each second starts
+        clock = new CachedClock(clockResolution, SharedDateFormat.CLF);
+        clock.start();
+        offHeapSlotsInUse = offHeapSlots && useOffHeapSlots(formatStage);
+        if (perProducerRings) {
+            startPerProducerRings();
+            setState(LifecycleState.STARTING);
+            return;
+        }
+
+        // a thread per event processor
+        int threads = shards;
+        if (formatStage && formatterThreads > 0) {
+            threads = shards * (formatterThreads + 1);
+        } else if (formatStage && captureMode) {
+            threads = shards * 2;
+        }
+        executorService = threads == 1 ? newSingleThreadExecutor() : newFixedThreadPool(threads);
+        WaitStrategyFactory waitStrategyFactory = new DefaultWaitStrategyFactory(waitStrategyType,ioMaxFlushLatency);
+        int shardBufferSize = Util.ceilingNextPowerOfTwo(Math.max(1, bufferSize / shards));
+
+        Disruptor<AccessLogEvent>[] newDisruptors = new Disruptor[shards];
+        RingBuffer<AccessLogEvent>[] newRingBuffers = new RingBuffer[shards];
+        LogEventHandler[] newEventHandlers = new LogEventHandler[shards];
+        for (int i = 0; i < shards; i++) {
+            newDisruptors[i] = new Disruptor<AccessLogEvent>(
+                    createEventFactory(shardBufferSize),
+                    shardBufferSize, executorService,
+                    ProducerType.MULTI, waitStrategyFactory.createWaitStrategy());
+
+            newEventHandlers[i] = new LogEventHandler(
+                    sm,encoding,log,getFileDateFormat(),
+                    directory,rotatable,renameOnRotate,
+                    !buffered,ioPageSize,ioPreallocatedFileSize,
+                    shards == 1 ? suffix : suffix + ".shard-" + i,prefix,checkExists,
+                    ioWriterType,ioMappedWindowSize,ioMaxFlushLatency,
+                    ioCompressionType,ioCompressionLevel,ioCompressionBlockSize,
+                    rotateMaxFileSize,rotationInterval,ioPreallocateSparse,createSink());
+            if (!formatStage) {
+                newEventHandlers[i].setBinaryFormat(new BinaryRecordEncoder(TimeZone.getDefault()));
+            }
+            newEventHandlers[i].setRotatedFileCompressor(rotatedFileCompressor);
+            newEventHandlers[i].setPreallocator(filePreallocator);
+            newEventHandlers[i].setClock(clock);
+            newEventHandlers[i].setGatheringWrites(ioGatheringWrites, ioMaxGatheredLines);
+            newDisruptors[i].handleExceptionsWith(new IgnoreExceptionHandler());
+            if (!formatStage) {
+                newDisruptors[i].handleEventsWith(new EventHandler[] {newEventHandlers[i]});
+            } else if (formatterThreads > 0) {
+                EventHandler<AccessLogEvent>[] formatters = new EventHandler[formatterThreads];
+                for (int k = 0; k < formatterThreads; k++) {
+                    formatters[k] = new FormattingEventHandler(k, formatterThreads, LineEncoder.forEncoding(encoding));
+                }
+                newDisruptors[i].handleEventsWith(formatters).then(newEventHandlers[i]);
+            } else if (captureMode) {
+                newDisruptors[i].handleEventsWith(new CapturedEventRenderer()).then(newEventHandlers[i]);
+            } else {
+                newDisruptors[i].handleEventsWith(new EventHandler[] {newEventHandlers[i]});
+            }
+        }
+        eventHandlers = newEventHandlers;
+        overflowHandler = createOverflowHandler();
+        for (int i = 0; i < shards; i++) {
+            newRingBuffers[i] = newDisruptors[i].start();
+        }
+        disruptors = newDisruptors;
+        ringBuffers = newRingBuffers;
+
+        setState(LifecycleState.STARTING);
+    }
+
+
+    /**
+     * Creates the sink a log writer sends the log lines to; null for the log file, which
+     * is also written to should the sink not be usable.
+     */
+    private AccessLogSink createSink() {
+        if (sinkType == AccessLogSink.SINK_TYPE.FILE) {
+            return null;
+        }
+        // binary records are not lines, so cannot be dropped a line at a time; and the segment
+        // header and dictionary they depend on are only written once, at the start of the file
+        if (binaryElements != null) {
+            log.error("Binary access log records can only be written to the log file, not to " + sink);
+            return null;
+        }
+        SyslogFramer framer = sinkType == AccessLogSink.SINK_TYPE.SYSLOG_UDP || sinkSyslogFraming ?
+                new SyslogFramer(syslogFacility, syslogSeverity, syslogHostname, syslogAppName, syslogMaxMessageSize) : null;
+        try {
+            switch (sinkType) {
+                case SYSLOG_UDP:
+                    return new SyslogUdpSink(sinkHost, sinkPort, framer, syslogMaxMessageSize, log);
+                case UNIX_SOCKET:
+                    if (!UnixSocketSink.isSupported() || sinkPath == null) {
+                        log.error("Unix domain sockets need Java 16 or later, and a sinkPath, writing to the log file");
+                        return null;
                     }
-                },
-                Util.ceilingNextPowerOfTwo(bufferSize), executorService,
-                ProducerType.MULTI, waitStrategyFactory.createWaitStrategy());
+                    return new UnixSocketSink(sinkPath, framer, sinkBacklogSize,
+                            sinkReconnectMinBackoff, sinkReconnectMaxBackoff, log);
+                default:
+                    return new TcpSink(sinkHost, sinkPort, framer, sinkBacklogSize,
+                            sinkReconnectMinBackoff, sinkReconnectMaxBackoff, log);
+            }
+        } catch (IOException e) {
+            log.error("Unable to create the access log sink " + sink + ", writing to the log file", e);
+            return null;
+        }
+    }
 
+    /**
+     * Whether the lines can be held in off heap slots.  The lines must be rendered by the
+     * request thread, need no transcoding, and the slots must only be freed at the end of
+     * a batch (which the per producer rings do not guarantee).
+     */
+    private boolean useOffHeapSlots(boolean formatStage) {
+        String reason = null;
+        if (!formatStage) {
+            reason = "binary records are encoded by the log writer";
+        } else if (captureMode || formatterThreads > 0) {
+            reason = "lines are not rendered by the request thread";
+        } else if (perProducerRings) {
+            reason = "per producer ring buffers are in use";
+        } else if (LineEncoder.forEncoding(encoding) != null) {
+            reason = "the log file's encoding is not UTF-8";
+        }
+        if (reason != null) {
+            log.info("Not using off heap slots, " + reason);
+            return false;
+        }
+        return true;
+    }
 
-        eventHandler = new LogEventHandler(
+    /**
+     * Starts the thread that drains each request thread's ring buffer, and writes
+     * to the log file.
+     */
+    private void startPerProducerRings() {
+        executorService = newSingleThreadExecutor();
+        LogEventHandler handler = new LogEventHandler(
                 sm,encoding,log,getFileDateFormat(),
                 directory,rotatable,renameOnRotate,
-                !buffered,ioPageSize,ioPreallocatedFileSize,suffix,prefix,checkExists);
-        disruptor.handleExceptionsWith(new IgnoreExceptionHandler());
-        disruptor.handleEventsWith(new EventHandler[] {eventHandler});
-        disruptor.start();
-
-        setState(LifecycleState.STARTING);
+                !buffered,ioPageSize,ioPreallocatedFileSize,suffix,prefix,checkExists,
+                ioWriterType,ioMappedWindowSize,ioMaxFlushLatency,
+                ioCompressionType,ioCompressionLevel,ioCompressionBlockSize,
+                    rotateMaxFileSize,rotationInterval,ioPreallocateSparse,createSink());
+        if (binaryElements != null) {
+            handler.setBinaryFormat(new BinaryRecordEncoder(TimeZone.getDefault()));
+        }
+        handler.setRotatedFileCompressor(rotatedFileCompressor);
+        handler.setPreallocator(filePreallocator);
+        handler.setClock(clock);
+        if (ioGatheringWrites) {
+            // a slot is freed as soon as it has been handled, not at the end of the batch
+            log.info("Not using gathering writes, per producer ring buffers are in use");
+        }
+        eventHandlers = new LogEventHandler[] {handler};
+        overflowHandler = createOverflowHandler();
+        int ringSize = Util.ceilingNextPowerOfTwo(producerBufferSize);
+        producerRings = new PerProducerRingTransport(
+                createEventFactory(ringSize),
+                ringSize,
+                captureMode && binaryElements == null ? new CapturedEventRenderer(handler) : handler, orderByDate,
+                waitStrategyType, ioMaxFlushLatency, log);
+        executorService.submit(producerRings);
     }
 
-
     /**
      * Stop this component and implement the requirements
      * of {@link org.apache.catalina.util.LifecycleBase#stopInternal()}.
@@ -909,10 +2074,86 @@ public class DisruptorAccessLogValve extends ValveBase implements AccessLog {
      */
     @Override
     protected synchronized void stopInternal() throws LifecycleException {
-        eventHandler.shutdown();
-        executorService.shutdownNow();
-        disruptor.shutdown();
         setState(LifecycleState.STOPPING);
+
+        // Wait for the log messages in the ring buffers to be written
+        if (producerRings != null) {
+            try {
+                if (!producerRings.shutdown(shutdownDrainTimeout, TimeUnit.MILLISECONDS)) {
+                    log.warn("Timed out waiting for access log messages to be written, on stop");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            long drainDeadline = System.currentTimeMillis() + shutdownDrainTimeout;
+            for (Disruptor<AccessLogEvent> disruptor : disruptors) {
+                try {
+                    disruptor.shutdown(Math.max(0, drainDeadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    log.warn("Timed out waiting for access log messages to be written, on stop");
+                    disruptor.halt();
+                }
+            }
+        }
+
+        // The writer threads are not interrupted, as that would close the file channel
+        // they may be writing to.
+        executorService.shutdown();
+        boolean terminated = false;
+        try {
+            terminated = executorService.awaitTermination(shutdownDrainTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (terminated) {
+            // write what is left in the current page, and close the file.
+            for (LogEventHandler handler : eventHandlers) {
+                handler.shutdown();
+            }
+        } else {
+            log.error("The access log writer threads have not stopped, on stop; the access log files have been left open");
+        }
+        if (overflowHandler != null) {
+            overflowHandler.shutdown();
+        }
+        if (rotatedFileCompressor != null) {
+            rotatedFileCompressor.shutdown();
+        }
+        if (filePreallocator != null) {
+            filePreallocator.shutdown();
+        }
+        if (clock != null) {
+            clock.stop();
+        }
+    }
+
+    /**
+     * Creates the handler for log messages that do not fit in the ring buffer,
+     * according to the overflow policy.
+     *
+     * @return the handler, or null if the request thread is to wait for space in the ring buffer.
+     */
+    private OverflowHandler createOverflowHandler() {
+        switch (overflowPolicyType) {
+            case DROP:
+                return new DroppingOverflowHandler();
+            case DROP_WITH_SUMMARY:
+                OverflowHandler dropping = new DroppingOverflowHandler();
+                eventHandlers[0].setOverflowSummary(dropping, overflowSummaryInterval);
+                return dropping;
+            case SPILL:
+                File overflowFile = new File(eventHandlers[0].getLogDirectory(), prefix + "overflow" + suffix);
+                try {
+                    return new SpillingOverflowHandler(overflowFile, log);
+                } catch (IOException e) {
+                    log.error("Unable to open access log overflow file:" + overflowFile + ", log messages will be dropped", e);
+                    return new DroppingOverflowHandler();
+                }
+            default:
+                return null;
+        }
     }
 
 
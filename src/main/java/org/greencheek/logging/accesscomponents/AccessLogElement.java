@@ -3,7 +3,7 @@ package org.greencheek.logging.accesscomponents;
 
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
-import org.greencheek.logging.domin.ResizableCharBuffer;
+import org.greencheek.logging.domin.ResizableByteBuffer;
 
 import java.util.Date;
 
@@ -11,7 +11,7 @@ import java.util.Date;
 * AccessLogElement writes the partial message into the buffer.
      */
 public interface AccessLogElement {
-    public void addElement(ResizableCharBuffer buf, long date, Request request,
+    public void addElement(ResizableByteBuffer buf, long date, Request request,
                            Response response, long time);
 
 }
@@ -3,12 +3,12 @@ package org.greencheek.logging.accesscomponents;
 import org.apache.catalina.Globals;
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
-import org.greencheek.logging.domin.ResizableCharBuffer;
+import org.greencheek.logging.domin.ResizableByteBuffer;
 
 /**
  * write bytes sent, excluding HTTP headers - %b, %B
  */
-public class ByteSentElement implements AccessLogElement {
+public class ByteSentElement implements CapturingAccessLogElement {
     private final boolean conversion;
 
     /**
@@ -19,20 +19,16 @@ public class ByteSentElement implements AccessLogElement {
     }
 
     @Override
-    public void addElement(ResizableCharBuffer buf, long date, Request request,
+    public void addElement(ResizableByteBuffer buf, long date, Request request,
                            Response response, long time) {
+        render(buf, capture(date, request, response, time));
+    }
+
+    @Override
+    public long capture(long date, Request request, Response response, long time) {
         // Don't need to flush since trigger for log message is after the
         // response has been committed
         long length = response.getBytesWritten(false);
-        if(length>0) {
-            if(length<Integer.MAX_VALUE) {
-                buf.append(Integer.toString((int)length));
-            } else {
-                buf.append(Long.toString(length));
-            }
-            return;
-        }
-
         if (length <= 0) {
             // Protect against nulls and unexpected types as these valves
             // may be set by untrusted applications
@@ -47,14 +43,15 @@ public class ByteSentElement implements AccessLogElement {
                 }
             }
         }
+        return length;
+    }
+
+    @Override
+    public void render(ResizableByteBuffer buf, long length) {
         if (length <= 0 && conversion) {
             buf.append('-');
         } else {
-            if(length<Integer.MAX_VALUE) {
-                buf.append(Integer.toString((int)length));
-            } else {
-                buf.append(Long.toString(length));
-            }
+            buf.appendLong(length);
         }
     }
 }
@@ -0,0 +1,22 @@
+package org.greencheek.logging.accesscomponents;
+
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.greencheek.logging.domin.ResizableByteBuffer;
+
+/**
+ * An AccessLogElement whose value can be captured as a single long on the
+ * request thread, and rendered as text later on (by the thread writing the log);
+ * taking the cost of formatting off the request thread.
+ */
+public interface CapturingAccessLogElement extends AccessLogElement {
+
+    /**
+     * Value rendered as '-'
+     */
+    public static final long NO_VALUE = Long.MIN_VALUE;
+
+    public long capture(long date, Request request, Response response, long time);
+
+    public void render(ResizableByteBuffer buf, long captured);
+}
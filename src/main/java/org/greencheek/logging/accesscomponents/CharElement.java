@@ -6,7 +6,7 @@ package org.greencheek.logging.accesscomponents;
 
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
-import org.greencheek.logging.domin.ResizableCharBuffer;
+import org.greencheek.logging.domin.ResizableByteBuffer;
 
 public class CharElement implements AccessLogElement {
     private final char theChar;
@@ -16,7 +16,7 @@ public class CharElement implements AccessLogElement {
     }
 
     @Override
-    public void addElement(ResizableCharBuffer buf, long date, Request request,
+    public void addElement(ResizableByteBuffer buf, long date, Request request,
                            Response response, long time) {
         buf.append(theChar);
     }
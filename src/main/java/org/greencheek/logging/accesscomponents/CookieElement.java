@@ -2,7 +2,7 @@ package org.greencheek.logging.accesscomponents;
 
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
-import org.greencheek.logging.domin.ResizableCharBuffer;
+import org.greencheek.logging.domin.ResizableByteBuffer;
 
 import javax.servlet.http.Cookie;
 
@@ -18,7 +18,7 @@ public class CookieElement implements AccessLogElement {
     }
 
     @Override
-    public void addElement(ResizableCharBuffer buf, long date, Request request,
+    public void addElement(ResizableByteBuffer buf, long date, Request request,
                            Response response, long time) {
         String value = null;
         Cookie[] c = request.getCookies();
@@ -2,12 +2,12 @@ package org.greencheek.logging.accesscomponents;
 
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
-import org.greencheek.logging.domin.ResizableCharBuffer;
+import org.greencheek.logging.domin.ResizableByteBuffer;
 
 /**
  * write time taken to process the request - %D, %T
  */
-public class ElapsedTimeElement implements AccessLogElement {
+public class ElapsedTimeElement implements CapturingAccessLogElement {
     private final boolean millis;
 
     /**
@@ -19,30 +19,23 @@ public class ElapsedTimeElement implements AccessLogElement {
     }
 
     @Override
-    public void addElement(ResizableCharBuffer buf, long date, Request request,
+    public void addElement(ResizableByteBuffer buf, long date, Request request,
                            Response response, long time) {
-        if (millis) {
-            if(time<=Integer.MAX_VALUE) {
-                buf.append(Integer.toString((int)time));
-            } else {
-                buf.append(Long.toString(time));
-            }
-        } else {
-            // second
-            buf.append(Long.toString(time / 1000));
-            buf.append('.');
-
-            // second
-            int remains = (int) (time % 1000);
-            char[] milliseconds = new char[3];
-            milliseconds[0] = ((char) ('0' + (remains / 100)));
-            remains = remains % 100;
-            milliseconds[1] = ((char) ('0' + (remains / 10)));
-            milliseconds[2] = ((char) ('0' + (remains % 10)));
-
-            buf.append(milliseconds);
+        render(buf, time);
+    }
 
+    @Override
+    public long capture(long date, Request request, Response response, long time) {
+        return time;
+    }
 
+    @Override
+    public void render(ResizableByteBuffer buf, long time) {
+        if (millis) {
+            buf.appendLong(time);
+        } else {
+            // seconds, to the milli
+            buf.appendFixedDecimal(time, 3);
         }
     }
 }
\ No newline at end of file
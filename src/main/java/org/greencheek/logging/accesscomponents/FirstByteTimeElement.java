@@ -2,26 +2,38 @@ package org.greencheek.logging.accesscomponents;
 
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
-import org.greencheek.logging.domin.ResizableCharBuffer;
+import org.greencheek.logging.domin.ResizableByteBuffer;
 
 
 /**
  * write time until first byte is written (commit time) in millis - %F
  */
-public class FirstByteTimeElement implements AccessLogElement {
+public class FirstByteTimeElement implements CapturingAccessLogElement {
 
 
     public FirstByteTimeElement() {
     }
 
     @Override
-    public void addElement(ResizableCharBuffer buf, long date, Request request, Response response, long time) {
+    public void addElement(ResizableByteBuffer buf, long date, Request request, Response response, long time) {
+        render(buf, capture(date, request, response, time));
+    }
+
+    @Override
+    public long capture(long date, Request request, Response response, long time) {
         long commitTime = response.getCoyoteResponse().getCommitTime();
         if (commitTime == -1) {
+            return NO_VALUE;
+        }
+        return commitTime - request.getCoyoteRequest().getStartTime();
+    }
+
+    @Override
+    public void render(ResizableByteBuffer buf, long delta) {
+        if (delta == NO_VALUE) {
             buf.append('-');
         } else {
-            long delta = commitTime - request.getCoyoteRequest().getStartTime();
-            buf.append(Long.toString(delta));
+            buf.appendLong(delta);
         }
     }
 }
\ No newline at end of file
@@ -2,14 +2,13 @@ package org.greencheek.logging.accesscomponents;
 
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
-import org.greencheek.logging.domin.ResizableCharBuffer;
-
-import java.util.Enumeration;
+import org.apache.tomcat.util.http.MimeHeaders;
+import org.greencheek.logging.domin.ResizableByteBuffer;
 
 /**
  * write incoming headers - %{xxx}i
  */
-public class HeaderElement implements AccessLogElement {
+public class HeaderElement extends MessageBytesElement {
     private final String header;
 
     public HeaderElement(String header) {
@@ -17,16 +16,24 @@ public class HeaderElement implements AccessLogElement {
     }
 
     @Override
-    public void addElement(ResizableCharBuffer buf, long date, Request request,
+    public void addElement(ResizableByteBuffer buf, long date, Request request,
                            Response response, long time) {
-        Enumeration<String> iter = request.getHeaders(header);
-        if (iter.hasMoreElements()) {
-            buf.append(iter.nextElement());
-            while (iter.hasMoreElements()) {
-                buf.append(',',iter.nextElement());
+        // walk the headers rather than use request.getHeaders(header), which
+        // returns an Enumeration of Strings
+        MimeHeaders headers = request.getCoyoteRequest().getMimeHeaders();
+        boolean found = false;
+        int size = headers.size();
+        for (int i = 0; i < size; i++) {
+            if (headers.getName(i).equalsIgnoreCase(header)) {
+                if (found) {
+                    buf.append(',');
+                }
+                found = true;
+                append(buf, headers.getValue(i));
             }
-            return;
         }
-        buf.append('-');
+        if (!found) {
+            buf.append('-');
+        }
     }
-}
\ No newline at end of file
+}
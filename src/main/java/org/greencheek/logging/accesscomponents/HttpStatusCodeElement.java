@@ -2,30 +2,40 @@ package org.greencheek.logging.accesscomponents;
 
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
-import org.greencheek.logging.domin.ResizableCharBuffer;
+import org.greencheek.logging.domin.ResizableByteBuffer;
 
 /**
  * write HTTP status code of the response - %s
  */
-public class HttpStatusCodeElement implements AccessLogElement {
+public class HttpStatusCodeElement implements CapturingAccessLogElement {
 
-    private static final char[][] codes = new char[1001][];
+    private static final byte[][] codes = new byte[1001][];
     static {
         for(int i=0;i<1001;i++) {
-            codes[i] = Integer.toString(i).toCharArray();
+            codes[i] = Integer.toString(i).getBytes(ResizableByteBuffer.UTF8);
         }
     }
 
     @Override
-    public void addElement(ResizableCharBuffer buf, long date, Request request,
+    public void addElement(ResizableByteBuffer buf, long date, Request request,
                            Response response, long time) {
-        if (response != null) {
+        render(buf, capture(date, request, response, time));
+    }
+
+    @Override
+    public long capture(long date, Request request, Response response, long time) {
+        return response == null ? NO_VALUE : response.getStatus();
+    }
+
+    @Override
+    public void render(ResizableByteBuffer buf, long captured) {
+        if (captured != NO_VALUE) {
             // This approach is used to reduce GC from toString conversion
-            int status = response.getStatus();
+            int status = (int)captured;
             if (-1 < status && status < 1001) {
                 buf.append(codes[status]);
             } else {
-                buf.append(Integer.toString(status));
+                buf.appendInt(status);
             }
         } else {
             buf.append('-');
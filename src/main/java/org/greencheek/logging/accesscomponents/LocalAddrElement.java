@@ -3,7 +3,7 @@ package org.greencheek.logging.accesscomponents;
 import org.apache.catalina.connector.Request;
 import org.apache.tomcat.util.ExceptionUtils;
 import org.apache.catalina.connector.Response;
-import org.greencheek.logging.domin.ResizableCharBuffer;
+import org.greencheek.logging.domin.ResizableByteBuffer;
 
 import java.net.InetAddress;
 
@@ -12,7 +12,7 @@ import java.net.InetAddress;
  */
 public class LocalAddrElement implements AccessLogElement {
 
-    private static final char[] LOCAL_ADDR_VALUE;
+    private static final byte[] LOCAL_ADDR_VALUE;
 
     static {
         String init;
@@ -23,11 +23,11 @@ public class LocalAddrElement implements AccessLogElement {
             init = "127.0.0.1";
         }
 
-        LOCAL_ADDR_VALUE = init.toCharArray();
+        LOCAL_ADDR_VALUE = init.getBytes(ResizableByteBuffer.UTF8);
     }
 
     @Override
-    public void addElement(ResizableCharBuffer buf, long date, Request request,
+    public void addElement(ResizableByteBuffer buf, long date, Request request,
                            Response response, long time) {
         buf.append(LOCAL_ADDR_VALUE);
     }
@@ -2,7 +2,7 @@ package org.greencheek.logging.accesscomponents;
 
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
-import org.greencheek.logging.domin.ResizableCharBuffer;
+import org.greencheek.logging.domin.ResizableByteBuffer;
 
 import static org.apache.catalina.AccessLog.*;
 
@@ -18,17 +18,19 @@ public class LocalPortElement implements AccessLogElement {
     }
 
     @Override
-    public void addElement(ResizableCharBuffer buf, long date, Request request,
+    public void addElement(ResizableByteBuffer buf, long date, Request request,
                            Response response, long time) {
         if (requestAttributesEnabled) {
             Object port = request.getAttribute(SERVER_PORT_ATTRIBUTE);
             if (port == null) {
-                buf.append(Integer.toString(request.getServerPort()));
+                buf.appendInt(request.getServerPort());
+            } else if (port instanceof Integer) {
+                buf.appendInt((Integer) port);
             } else {
                 buf.append(port.toString());
             }
         } else {
-            buf.append(Integer.toString(request.getServerPort()));
+            buf.appendInt(request.getServerPort());
         }
     }
 }
\ No newline at end of file
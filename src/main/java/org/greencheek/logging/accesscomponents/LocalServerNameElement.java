@@ -2,15 +2,15 @@ package org.greencheek.logging.accesscomponents;
 
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
-import org.greencheek.logging.domin.ResizableCharBuffer;
+import org.greencheek.logging.domin.ResizableByteBuffer;
 
 /**
  * write local server name - %v
  */
-public class LocalServerNameElement implements AccessLogElement {
+public class LocalServerNameElement extends MessageBytesElement {
     @Override
-    public void addElement(ResizableCharBuffer buf, long date, Request request,
+    public void addElement(ResizableByteBuffer buf, long date, Request request,
                            Response response, long time) {
-        buf.append(request.getServerName());
+        append(buf, request.getCoyoteRequest().serverName());
     }
 }
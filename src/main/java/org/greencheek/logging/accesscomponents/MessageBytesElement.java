@@ -0,0 +1,41 @@
+package org.greencheek.logging.accesscomponents;
+
+import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.buf.CharChunk;
+import org.apache.tomcat.util.buf.MessageBytes;
+import org.greencheek.logging.domin.ResizableByteBuffer;
+
+/**
+ * Base class for the elements that source their value from the coyote request's
+ * {@link MessageBytes}, rather than from the catalina Request.  The catalina
+ * Request methods (getMethod(), getQueryString(), getHeaders(...)) call toString()
+ * on the MessageBytes, which creates a String from the underlying ByteChunk.
+ * Instead the bytes, as received on the wire, are copied straight into the buffer.
+ */
+public abstract class MessageBytesElement implements AccessLogElement {
+
+    /**
+     * Copy the value held in the given MessageBytes into the buffer.
+     *
+     * @param buf the buffer to write to
+     * @param mb the MessageBytes to copy from
+     * @return false if the MessageBytes does not hold a value, in which case nothing is written.
+     */
+    protected static boolean append(ResizableByteBuffer buf, MessageBytes mb) {
+        switch (mb.getType()) {
+            case MessageBytes.T_BYTES:
+                ByteChunk by = mb.getByteChunk();
+                buf.putByteArrayByOffsetWithResize(by.getBuffer(), by.getOffset(), by.getLength());
+                return true;
+            case MessageBytes.T_CHARS:
+                CharChunk c = mb.getCharChunk();
+                buf.putCharArrayByOffsetWithResize(c.getChars(), c.getOffset(), c.getLength());
+                return true;
+            case MessageBytes.T_STR:
+                buf.append(mb.getString());
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -2,19 +2,19 @@ package org.greencheek.logging.accesscomponents;
 
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
-import org.greencheek.logging.domin.ResizableCharBuffer;
+import org.greencheek.logging.domin.ResizableByteBuffer;
 
 /**
  * write request method (GET, POST, etc.) - %m
  */
-public class MethodElement implements AccessLogElement {
+public class MethodElement extends MessageBytesElement {
 
 
     @Override
-    public void addElement(ResizableCharBuffer buf, long date, Request request,
+    public void addElement(ResizableByteBuffer buf, long date, Request request,
                            Response response, long time) {
         if (request != null) {
-            buf.append(request.getMethod());
+            append(buf, request.getCoyoteRequest().method());
         }
     }
 }
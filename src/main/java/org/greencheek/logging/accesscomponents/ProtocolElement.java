@@ -2,14 +2,14 @@ package org.greencheek.logging.accesscomponents;
 
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
-import org.greencheek.logging.domin.ResizableCharBuffer;
+import org.greencheek.logging.domin.ResizableByteBuffer;
 
 import static org.apache.catalina.AccessLog.*;
 
 /**
  * write request protocol - %H
  */
-public class ProtocolElement implements AccessLogElement {
+public class ProtocolElement extends MessageBytesElement {
 
     private final boolean requestAttributesEnabled;
 
@@ -18,17 +18,17 @@ public class ProtocolElement implements AccessLogElement {
     }
 
     @Override
-    public void addElement(ResizableCharBuffer buf, long date, Request request,
+    public void addElement(ResizableByteBuffer buf, long date, Request request,
                            Response response, long time) {
         if (requestAttributesEnabled) {
             Object proto = request.getAttribute(PROTOCOL_ATTRIBUTE);
             if (proto == null) {
-                buf.append(request.getProtocol());
+                append(buf, request.getCoyoteRequest().protocol());
             } else {
                 buf.append(proto.toString());
             }
         } else {
-            buf.append(request.getProtocol());
+            append(buf, request.getCoyoteRequest().protocol());
         }
     }
 }
\ No newline at end of file
@@ -2,22 +2,22 @@ package org.greencheek.logging.accesscomponents;
 
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
-import org.greencheek.logging.domin.ResizableCharBuffer;
+import org.apache.tomcat.util.buf.MessageBytes;
+import org.greencheek.logging.domin.ResizableByteBuffer;
 
 /**
  * write Query string (prepended with a '?' if it exists) - %q
  */
-public class QueryElement implements AccessLogElement {
+public class QueryElement extends MessageBytesElement {
     @Override
-    public void addElement(ResizableCharBuffer buf, long date, Request request,
+    public void addElement(ResizableByteBuffer buf, long date, Request request,
                            Response response, long time) {
-        String query = null;
         if (request != null) {
-            query = request.getQueryString();
-        }
-        if (query != null) {
-            buf.append('?');
-            buf.append(query);
+            MessageBytes query = request.getCoyoteRequest().queryString();
+            if (!query.isNull()) {
+                buf.append('?');
+                append(buf, query);
+            }
         }
     }
-}
\ No newline at end of file
+}
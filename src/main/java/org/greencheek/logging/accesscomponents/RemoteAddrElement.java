@@ -2,7 +2,7 @@ package org.greencheek.logging.accesscomponents;
 
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
-import org.greencheek.logging.domin.ResizableCharBuffer;
+import org.greencheek.logging.domin.ResizableByteBuffer;
 
 import static org.apache.catalina.AccessLog.*;
 
@@ -18,7 +18,7 @@ public class RemoteAddrElement implements AccessLogElement {
     }
 
     @Override
-    public void addElement(ResizableCharBuffer buf, long date, Request request,
+    public void addElement(ResizableByteBuffer buf, long date, Request request,
                            Response response, long time) {
         if (requestAttributesEnabled) {
             Object addr = request.getAttribute(REMOTE_ADDR_ATTRIBUTE);
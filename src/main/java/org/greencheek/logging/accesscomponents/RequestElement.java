@@ -2,38 +2,36 @@ package org.greencheek.logging.accesscomponents;
 
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
-import org.apache.tomcat.util.buf.ByteChunk;
-import org.apache.tomcat.util.buf.CharChunk;
 import org.apache.tomcat.util.buf.MessageBytes;
-import org.greencheek.logging.domin.ResizableCharBuffer;
-
-import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
-import java.nio.charset.Charset;
+import org.greencheek.logging.domin.ResizableByteBuffer;
 
 /**
  * write first line of the request (method and request URI) - %r
  */
-public class RequestElement implements AccessLogElement {
+public class RequestElement extends MessageBytesElement {
     @Override
-    public void addElement(ResizableCharBuffer buf, long date, Request request,
+    public void addElement(ResizableByteBuffer buf, long date, Request request,
                            Response response, long time) {
         if (request != null) {
-            String method = request.getMethod();
-            if (method == null) {
+            org.apache.coyote.Request coyoteRequest = request.getCoyoteRequest();
+            MessageBytes method = coyoteRequest.method();
+            if (method.isNull()) {
                 // No method means no request line
                 buf.append('-');
             } else {
-
-                buf.append(method,' ',request.getRequestURI());
-                String queryString = request.getQueryString();
-                if (queryString != null) {
-                    buf.append('?',queryString);
+                append(buf, method);
+                buf.append(' ');
+                append(buf, coyoteRequest.requestURI());
+                MessageBytes queryString = coyoteRequest.queryString();
+                if (!queryString.isNull()) {
+                    buf.append('?');
+                    append(buf, queryString);
                 }
-                buf.append(' ',request.getProtocol());
+                buf.append(' ');
+                append(buf, coyoteRequest.protocol());
             }
         } else {
             buf.append('-');
         }
     }
-}
\ No newline at end of file
+}
@@ -6,17 +6,17 @@ package org.greencheek.logging.accesscomponents;
 
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
-import org.greencheek.logging.domin.ResizableCharBuffer;
+import org.greencheek.logging.domin.ResizableByteBuffer;
 
 public class StringElement implements AccessLogElement {
-    private final char[] str;
+    private final byte[] str;
 
     public StringElement(String str) {
-        this.str = str.toCharArray();
+        this.str = str.getBytes(ResizableByteBuffer.UTF8);
     }
 
     @Override
-    public void addElement(ResizableCharBuffer buf, long date, Request request,
+    public void addElement(ResizableByteBuffer buf, long date, Request request,
                            Response response, long time) {
         buf.append(str);
     }
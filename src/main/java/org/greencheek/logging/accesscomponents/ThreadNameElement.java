@@ -3,14 +3,14 @@ package org.greencheek.logging.accesscomponents;
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
 import org.apache.coyote.RequestInfo;
-import org.greencheek.logging.domin.ResizableCharBuffer;
+import org.greencheek.logging.domin.ResizableByteBuffer;
 
 /**
  * write thread name - %I
  */
 public class ThreadNameElement implements AccessLogElement {
     @Override
-    public void addElement(ResizableCharBuffer buf, long date, Request request,
+    public void addElement(ResizableByteBuffer buf, long date, Request request,
                            Response response, long time) {
         RequestInfo info = request.getCoyoteRequest().getRequestProcessor();
         if (info != null) {
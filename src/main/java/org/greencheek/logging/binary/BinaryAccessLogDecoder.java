@@ -0,0 +1,322 @@
+package org.greencheek.logging.binary;
+
+import org.greencheek.logging.accesscomponents.CapturingAccessLogElement;
+import org.greencheek.util.FastDatePrinter;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.zip.GZIPInputStream;
+
+import static org.greencheek.logging.binary.BinaryAccessLogFormat.*;
+
+/**
+ * Reads the records of a {@link BinaryAccessLogFormat binary access log}, and renders
+ * them as common or combined format log lines.
+ *
+ * From the command line:
+ * <pre>
+ * java org.greencheek.logging.binary.BinaryAccessLogDecoder [common|combined] file...
+ * </pre>
+ * writes the lines of the given files (or standard input, for "-") to standard output.
+ * Gzipped files are decompressed.
+ *
+ * Not thread safe.
+ */
+public class BinaryAccessLogDecoder {
+
+    public enum OUTPUT_FORMAT_TYPE {
+        COMMON,
+        COMBINED
+    }
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String CLF_FORMAT = "[dd/MMM/yyyy:HH:mm:ss Z]";
+
+    private final InputStream in;
+    private long offset = 0;
+
+    private boolean inSegment = false;
+    private final List<String> dictionary = new ArrayList<String>();
+    private FastDatePrinter datePrinter;
+
+    private long timestamp;
+    private long status;
+    private long bytesSent;
+    private long elapsed;
+    private final String[] strings = new String[FIELD_COUNT];
+    private String comment;
+
+    public BinaryAccessLogDecoder(InputStream in) {
+        this.in = new CountingInputStream(in instanceof BufferedInputStream ? in : new BufferedInputStream(in, 65536));
+    }
+
+    /**
+     * Reads the next record
+     *
+     * @return {@link BinaryAccessLogFormat#ACCESS_RECORD}, {@link BinaryAccessLogFormat#COMMENT_RECORD},
+     *         or -1 at the end of the input.
+     */
+    public int next() throws IOException {
+        while (true) {
+            int type = in.read();
+            switch (type) {
+                case -1:
+                    return -1;
+                case 0:
+                case '\r':
+                case '\n':
+                    // padding
+                    break;
+                case 'G':
+                    readHeader();
+                    break;
+                case ACCESS_RECORD:
+                    checkInSegment();
+                    readAccess();
+                    return type;
+                case COMMENT_RECORD:
+                    checkInSegment();
+                    comment = readLiteral();
+                    return type;
+                default:
+                    throw new IOException("Unknown record type " + type + " at offset " + (offset - 1));
+            }
+        }
+    }
+
+    private void checkInSegment() throws IOException {
+        if (!inSegment) {
+            throw new IOException("Record before a segment header at offset " + (offset - 1));
+        }
+    }
+
+    private void readHeader() throws IOException {
+        for (int i = 1; i < MAGIC.length; i++) {
+            if (in.read() != MAGIC[i]) {
+                throw new IOException("Bad segment header at offset " + offset);
+            }
+        }
+        int version = in.read();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version + " at offset " + offset);
+        }
+        String zone = readLiteral();
+        datePrinter = new FastDatePrinter(CLF_FORMAT, TimeZone.getTimeZone(zone), Locale.US);
+        dictionary.clear();
+        timestamp = 0;
+        inSegment = true;
+    }
+
+    private void readAccess() throws IOException {
+        timestamp += readZigZag(in);
+        int statusByte = read();
+        status = statusByte == 0 ? readZigZag(in) : statusByte + STATUS_BYTE_BASE;
+        bytesSent = readZigZag(in);
+        elapsed = readZigZag(in);
+        for (int i = FIRST_STRING; i < FIELD_COUNT; i++) {
+            strings[i] = readString();
+        }
+    }
+
+    private String readString() throws IOException {
+        long code = readVarLong(in);
+        if (code == STRING_LITERAL) {
+            return readLiteral();
+        } else if (code == STRING_LITERAL_ADDED) {
+            String value = readLiteral();
+            dictionary.add(value);
+            return value;
+        } else {
+            long id = code - STRING_DICTIONARY_BASE;
+            if (id >= dictionary.size()) {
+                throw new IOException("Unknown dictionary entry " + id + " at offset " + offset);
+            }
+            return dictionary.get((int) id);
+        }
+    }
+
+    private String readLiteral() throws IOException {
+        long length = readVarLong(in);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Bad string length at offset " + offset);
+        }
+        byte[] bytes = new byte[(int) length];
+        int read = 0;
+        while (read < bytes.length) {
+            int n = in.read(bytes, read, bytes.length - read);
+            if (n == -1) {
+                throw new EOFException("Truncated string at offset " + offset);
+            }
+            read += n;
+        }
+        return new String(bytes, UTF8);
+    }
+
+    private int read() throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            throw new EOFException("Truncated record at offset " + offset);
+        }
+        return b;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * The status, {@link CapturingAccessLogElement#NO_VALUE} if there was no response
+     */
+    public long getStatus() {
+        return status;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getElapsedMillis() {
+        return elapsed;
+    }
+
+    /**
+     * One of the string fields of the access record, as it would be rendered in a text log line
+     *
+     * @param field {@link BinaryAccessLogFormat#REMOTE_HOST} to {@link BinaryAccessLogFormat#USER_AGENT}
+     */
+    public String getString(int field) {
+        return strings[field];
+    }
+
+    public String getComment() {
+        return comment;
+    }
+
+    /**
+     * Renders the current access record as a common (<code>%h %l %u %t "%r" %s %b</code>),
+     * or combined (common plus <code>"%{Referer}i" "%{User-Agent}i"</code>) log line.
+     */
+    public void render(StringBuilder line, OUTPUT_FORMAT_TYPE format) {
+        line.append(strings[REMOTE_HOST]).append(" - ").append(strings[REMOTE_USER]).append(' ');
+        line.append(datePrinter.format(timestamp)).append(" \"");
+        String method = strings[METHOD];
+        if (method.length() == 0) {
+            // No method means no request line
+            line.append('-');
+        } else {
+            line.append(method).append(' ').append(strings[REQUEST_URI]).append(strings[QUERY])
+                    .append(' ').append(strings[PROTOCOL]);
+        }
+        line.append("\" ");
+        if (status == CapturingAccessLogElement.NO_VALUE) {
+            line.append('-');
+        } else {
+            line.append(status);
+        }
+        line.append(' ');
+        if (bytesSent <= 0) {
+            line.append('-');
+        } else {
+            line.append(bytesSent);
+        }
+        if (format == OUTPUT_FORMAT_TYPE.COMBINED) {
+            line.append(" \"").append(strings[REFERER]).append("\" \"").append(strings[USER_AGENT]).append('"');
+        }
+    }
+
+    /**
+     * Writes each record of the input as a line of text; comments are prefixed with "# "
+     */
+    public void decodeTo(Writer out, OUTPUT_FORMAT_TYPE format) throws IOException {
+        StringBuilder line = new StringBuilder(256);
+        int type;
+        while ((type = next()) != -1) {
+            line.setLength(0);
+            if (type == ACCESS_RECORD) {
+                render(line, format);
+            } else {
+                String text = comment;
+                line.append(text.startsWith("#") ? text : "# " + text);
+            }
+            line.append('\n');
+            out.write(line.toString());
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        OUTPUT_FORMAT_TYPE format = OUTPUT_FORMAT_TYPE.COMBINED;
+        int first = 0;
+        if (args.length > 0 && args[0].equalsIgnoreCase("common")) {
+            format = OUTPUT_FORMAT_TYPE.COMMON;
+            first = 1;
+        } else if (args.length > 0 && args[0].equalsIgnoreCase("combined")) {
+            first = 1;
+        }
+        if (first == args.length) {
+            System.err.println("Usage: java " + BinaryAccessLogDecoder.class.getName() + " [common|combined] file...");
+            System.exit(1);
+        }
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, UTF8), 65536);
+        try {
+            for (int i = first; i < args.length; i++) {
+                InputStream in = open(args[i]);
+                try {
+                    new BinaryAccessLogDecoder(in).decodeTo(out, format);
+                } catch (IOException e) {
+                    out.flush();
+                    System.err.println(args[i] + ": " + e.getMessage());
+                } finally {
+                    if (!args[i].equals("-")) {
+                        in.close();
+                    }
+                }
+            }
+        } finally {
+            out.flush();
+        }
+    }
+
+    /**
+     * Opens the named file, or standard input for "-"; decompressing it if it is gzipped
+     */
+    private static InputStream open(String name) throws IOException {
+        InputStream in = new BufferedInputStream(name.equals("-") ? System.in : new FileInputStream(name), 65536);
+        in.mark(2);
+        boolean gzipped = in.read() == 0x1f && in.read() == 0x8b;
+        in.reset();
+        return gzipped ? new GZIPInputStream(in, 65536) : in;
+    }
+
+    /**
+     * Keeps track of the offset into the input, for error messages
+     */
+    private class CountingInputStream extends FilterInputStream {
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                offset++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                offset += n;
+            }
+            return n;
+        }
+    }
+}
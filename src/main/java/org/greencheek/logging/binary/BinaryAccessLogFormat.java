@@ -0,0 +1,132 @@
+package org.greencheek.logging.binary;
+
+import org.greencheek.logging.accesscomponents.*;
+import org.greencheek.logging.domin.ResizableByteBuffer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A compact binary alternative to the text access log.
+ *
+ * A file is a sequence of segments.  Each segment starts with a header, and is
+ * followed by records; a new segment is started each time the log file is opened.
+ * <pre>
+ * header  := 'G' 'C' 'A' 'L' version(byte) timeZoneId(literal)
+ * record  := ACCESS timestamp status bytesSent elapsed string{9}
+ *          | COMMENT literal
+ * </pre>
+ * <ul>
+ *     <li>timestamp: zig zag varint, millis since the previous record's timestamp (0 at the start of a segment)</li>
+ *     <li>status: a single byte, <code>status - 99</code>, for statuses 100 to 354;
+ *         otherwise a 0 byte followed by the status as a zig zag varint</li>
+ *     <li>bytesSent and elapsed (millis): zig zag varints</li>
+ *     <li>the strings: remote host, remote user, method, request URI, query string (with its leading '?'),
+ *         protocol, server name, Referer and User-Agent; as they would be rendered in a text log line.</li>
+ * </ul>
+ * A string is a varint code: 0 for a literal that follows; 1 for a literal that follows, and
+ * is added to the segment's dictionary as the next entry; n for the dictionary entry n - 2.
+ * A literal is its length in bytes, as a varint, followed by its UTF-8 bytes.
+ *
+ * Zero bytes (unwritten preallocated space) and line endings (written when a file
+ * is reopened for appending) between records are skipped.
+ */
+public class BinaryAccessLogFormat {
+
+    public enum LOG_FORMAT_TYPE {
+        TEXT,
+        BINARY
+    }
+
+    public static final byte[] MAGIC = {'G', 'C', 'A', 'L'};
+    public static final int VERSION = 1;
+
+    public static final int ACCESS_RECORD = 1;
+    public static final int COMMENT_RECORD = 2;
+
+    public static final int STRING_LITERAL = 0;
+    public static final int STRING_LITERAL_ADDED = 1;
+    public static final int STRING_DICTIONARY_BASE = 2;
+
+    static final int STATUS_BYTE_BASE = 99;
+    static final int MAX_STATUS_BYTE = 255 + STATUS_BYTE_BASE;
+
+    // positions of the captured elements
+    public static final int STATUS = 0;
+    public static final int BYTES_SENT = 1;
+    public static final int ELAPSED = 2;
+    public static final int REMOTE_HOST = 3;
+    public static final int REMOTE_USER = 4;
+    public static final int METHOD = 5;
+    public static final int REQUEST_URI = 6;
+    public static final int QUERY = 7;
+    public static final int PROTOCOL = 8;
+    public static final int SERVER_NAME = 9;
+    public static final int REFERER = 10;
+    public static final int USER_AGENT = 11;
+
+    public static final int FIRST_STRING = REMOTE_HOST;
+    public static final int FIELD_COUNT = USER_AGENT + 1;
+
+    /**
+     * The elements captured on the request thread for a binary record, in field order.
+     * The numeric fields capture a long, the strings are rendered.
+     */
+    public static AccessLogElement[] createElements(boolean requestAttributesEnabled) {
+        AccessLogElement[] elements = new AccessLogElement[FIELD_COUNT];
+        elements[STATUS] = new HttpStatusCodeElement();
+        elements[BYTES_SENT] = new ByteSentElement(false);
+        elements[ELAPSED] = new ElapsedTimeElement(true);
+        elements[REMOTE_HOST] = new HostElement(requestAttributesEnabled);
+        elements[REMOTE_USER] = new UserElement();
+        elements[METHOD] = new MethodElement();
+        elements[REQUEST_URI] = new RequestURIElement();
+        elements[QUERY] = new QueryElement();
+        elements[PROTOCOL] = new ProtocolElement(requestAttributesEnabled);
+        elements[SERVER_NAME] = new LocalServerNameElement();
+        elements[REFERER] = new HeaderElement("Referer");
+        elements[USER_AGENT] = new HeaderElement("User-Agent");
+        return elements;
+    }
+
+    /**
+     * Whether the field repeats often enough to be worth adding to the dictionary.
+     * Query strings rarely do.
+     */
+    static boolean isDictionaryCoded(int field) {
+        return field != QUERY;
+    }
+
+    public static void writeVarLong(ResizableByteBuffer buf, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf.append((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.append((byte) value);
+    }
+
+    public static void writeZigZag(ResizableByteBuffer buf, long value) {
+        writeVarLong(buf, (value << 1) ^ (value >> 63));
+    }
+
+    public static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Truncated varint");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    public static long readZigZag(InputStream in) throws IOException {
+        long value = readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
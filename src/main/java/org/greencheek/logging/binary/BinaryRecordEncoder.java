@@ -0,0 +1,190 @@
+package org.greencheek.logging.binary;
+
+import org.greencheek.logging.domin.AccessLogEvent;
+import org.greencheek.logging.domin.ResizableByteBuffer;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+import static org.greencheek.logging.binary.BinaryAccessLogFormat.*;
+
+/**
+ * Encodes the events captured with the {@link BinaryAccessLogFormat#createElements(boolean) binary elements}
+ * into binary records.  The dictionary and the previous record's timestamp are per segment, so the
+ * encoder must be {@link #startSegment(ResizableByteBuffer) restarted} each time a log file is opened,
+ * and must only be used by the thread writing to that file.
+ *
+ * Looking up a string in the dictionary does not create any garbage, the dictionary is keyed
+ * on the captured bytes.
+ *
+ * A string is only added to the dictionary the second time it is seen (as near as a small
+ * table of the hashes of recent literals can tell); so that one off values, such as client
+ * addresses and URIs holding ids, do not fill the dictionary, leaving the strings that do
+ * repeat to be written as literals.
+ */
+public class BinaryRecordEncoder {
+
+    // The dictionary is bounded, once full strings not in it are written as literals
+    private static final int MAX_ENTRIES = 1 << 16;
+    private static final int MAX_ENTRY_LENGTH = 512;
+    private static final int RECENT_LITERALS = 1 << 12;
+
+    private final byte[] header;
+
+    private byte[][] entries = new byte[1024][];
+    private int[] entryHashes = new int[1024];
+    private int entryCount = 0;
+    // open addressing, holding the entry id + 1; 0 for an empty slot
+    private int[] table = new int[2048];
+    // the hashes of literals seen once, by hash
+    private final int[] recentLiterals = new int[RECENT_LITERALS];
+
+    private long previousTimestamp = 0;
+
+    public BinaryRecordEncoder(TimeZone timeZone) {
+        ResizableByteBuffer buf = new ResizableByteBuffer(32);
+        buf.append(MAGIC);
+        buf.append((byte) VERSION);
+        byte[] zone = timeZone.getID().getBytes(ResizableByteBuffer.UTF8);
+        writeVarLong(buf, zone.length);
+        buf.append(zone);
+        header = Arrays.copyOf(buf.getBuf(), buf.size());
+    }
+
+    /**
+     * Clears the dictionary, and writes the segment header.
+     */
+    public void startSegment(ResizableByteBuffer out) {
+        Arrays.fill(entries, 0, entryCount, null);
+        Arrays.fill(table, 0);
+        Arrays.fill(recentLiterals, 0);
+        entryCount = 0;
+        previousTimestamp = 0;
+        out.append(header);
+    }
+
+    public void encode(AccessLogEvent event, ResizableByteBuffer out) {
+        long[] values = event.getCapturedValues();
+        ResizableByteBuffer captured = event.getCapturedBytes();
+
+        out.append((byte) ACCESS_RECORD);
+        long timestamp = event.getLogDate();
+        writeZigZag(out, timestamp - previousTimestamp);
+        previousTimestamp = timestamp;
+
+        long status = values[STATUS];
+        if (status > STATUS_BYTE_BASE && status <= MAX_STATUS_BYTE) {
+            out.append((byte) (status - STATUS_BYTE_BASE));
+        } else {
+            out.append((byte) 0);
+            writeZigZag(out, status);
+        }
+        writeZigZag(out, values[BYTES_SENT]);
+        writeZigZag(out, values[ELAPSED]);
+
+        byte[] bytes = captured.getBuf();
+        int offset = 0;
+        for (int i = FIRST_STRING; i < FIELD_COUNT; i++) {
+            int length = (int) values[i];
+            writeString(out, bytes, offset, length, isDictionaryCoded(i));
+            offset += length;
+        }
+    }
+
+    public void encodeComment(String comment, ResizableByteBuffer out) {
+        byte[] bytes = comment.getBytes(ResizableByteBuffer.UTF8);
+        out.append((byte) COMMENT_RECORD);
+        writeVarLong(out, bytes.length);
+        out.append(bytes);
+    }
+
+    private void writeString(ResizableByteBuffer out, byte[] bytes, int offset, int length, boolean dictionaryCoded) {
+        if (dictionaryCoded && length <= MAX_ENTRY_LENGTH) {
+            int hash = hash(bytes, offset, length);
+            int id = find(bytes, offset, length, hash);
+            if (id >= 0) {
+                writeVarLong(out, STRING_DICTIONARY_BASE + id);
+                return;
+            }
+            int recent = hash & (RECENT_LITERALS - 1);
+            if (recentLiterals[recent] != hash) {
+                // first seen, only remembered
+                recentLiterals[recent] = hash;
+            } else if (entryCount < MAX_ENTRIES) {
+                add(Arrays.copyOfRange(bytes, offset, offset + length), hash);
+                writeVarLong(out, STRING_LITERAL_ADDED);
+                writeVarLong(out, length);
+                out.putByteArrayByOffsetWithResize(bytes, offset, length);
+                return;
+            }
+        }
+        writeVarLong(out, STRING_LITERAL);
+        writeVarLong(out, length);
+        out.putByteArrayByOffsetWithResize(bytes, offset, length);
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private int find(byte[] bytes, int offset, int length, int hash) {
+        int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (id < 0) {
+                return -1;
+            }
+            if (entryHashes[id] == hash && matches(entries[id], bytes, offset, length)) {
+                return id;
+            }
+        }
+    }
+
+    private static boolean matches(byte[] entry, byte[] bytes, int offset, int length) {
+        if (entry.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (entry[i] != bytes[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(byte[] entry, int hash) {
+        if (entryCount == entries.length) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+            entryHashes = Arrays.copyOf(entryHashes, entryHashes.length * 2);
+        }
+        int id = entryCount++;
+        entries[id] = entry;
+        entryHashes[id] = hash;
+        if (entryCount * 2 > table.length) {
+            rehash(table.length * 2);
+        } else {
+            insert(table, id);
+        }
+    }
+
+    private void rehash(int size) {
+        int[] newTable = new int[size];
+        for (int id = 0; id < entryCount; id++) {
+            insert(newTable, id);
+        }
+        table = newTable;
+    }
+
+    private void insert(int[] table, int id) {
+        int mask = table.length - 1;
+        int slot = entryHashes[id] & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = id + 1;
+    }
+}
@@ -0,0 +1,15 @@
+package org.greencheek.logging.convertor;
+
+import org.greencheek.logging.domin.ResizableByteBuffer;
+
+/**
+ * Encodes the given String into the ByteBuffer char by char, with {@link String#charAt(int)}.
+ * Works on any JDK.
+ */
+public class CharAtStringToResizableByteBuffer implements StringToResizableByteBuffer {
+
+    @Override
+    public void copyStringToByteBuffer(String s, ResizableByteBuffer buffer) {
+        buffer.putStringWithResize(s,0,s.length());
+    }
+}
@@ -0,0 +1,21 @@
+package org.greencheek.logging.convertor;
+
+import org.greencheek.logging.domin.ResizableByteBuffer;
+import org.greencheek.util.UnsafeString;
+
+/**
+ * For the compact strings of JDK 9 and later.  A String holding ISO-8859-1 bytes has
+ * them copied into the ByteBuffer directly (any ASCII byte is the same in UTF-8), rather
+ * than being inflated to chars.  Any other String is encoded char by char.
+ */
+public class CompactStringToResizableByteBuffer implements StringToResizableByteBuffer {
+
+    @Override
+    public void copyStringToByteBuffer(String s, ResizableByteBuffer buffer) {
+        if (UnsafeString.getCoder(s) == UnsafeString.LATIN1) {
+            buffer.putLatin1WithResize(UnsafeString.getBytes(s),0,s.length());
+        } else {
+            buffer.putStringWithResize(s,0,s.length());
+        }
+    }
+}
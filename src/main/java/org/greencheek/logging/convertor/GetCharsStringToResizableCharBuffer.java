@@ -0,0 +1,15 @@
+package org.greencheek.logging.convertor;
+
+import org.greencheek.logging.domin.ResizableCharBuffer;
+
+/**
+ * Copies the contents of the given String to the CharBuffer with {@link String#getChars(int, int, char[], int)},
+ * straight into the buffer's array.  Works on any JDK.
+ */
+public class GetCharsStringToResizableCharBuffer implements StringToResizableCharBuffer {
+
+    @Override
+    public void copyStringToCharBuffer(String s, ResizableCharBuffer buffer) {
+        buffer.putStringWithResize(s,0,s.length());
+    }
+}
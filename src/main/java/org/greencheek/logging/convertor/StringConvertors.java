@@ -0,0 +1,49 @@
+package org.greencheek.logging.convertor;
+
+import org.greencheek.util.UnsafeString;
+
+/**
+ * Selects, at runtime, how the contents of a String are copied into the log buffers;
+ * by the layout of String in the running JDK (see {@link UnsafeString}).
+ * <ul>
+ *     <li>Up to JDK 8 the String's char[] is read directly</li>
+ *     <li>From JDK 9, the ISO-8859-1 bytes of a compact String are copied into the
+ *     byte buffer as they are, without being inflated to chars first</li>
+ *     <li>Otherwise, or if the system property {@value #PORTABLE_PROPERTY} is true,
+ *     the String is copied through its public methods</li>
+ * </ul>
+ */
+public final class StringConvertors {
+
+    public static final String PORTABLE_PROPERTY = "org.greencheek.logging.portableStringCopy";
+
+    private StringConvertors() {
+    }
+
+    private static UnsafeString.LAYOUT_TYPE layout() {
+        if (Boolean.getBoolean(PORTABLE_PROPERTY)) {
+            return UnsafeString.LAYOUT_TYPE.UNKNOWN;
+        }
+        return UnsafeString.LAYOUT;
+    }
+
+    public static StringToResizableCharBuffer charBufferConvertor() {
+        switch (layout()) {
+            case CHAR_ARRAY:
+                return new UnsafeStringToResizableCharBuffer();
+            default:
+                return new GetCharsStringToResizableCharBuffer();
+        }
+    }
+
+    public static StringToResizableByteBuffer byteBufferConvertor() {
+        switch (layout()) {
+            case CHAR_ARRAY:
+                return new UnsafeStringToResizableByteBuffer();
+            case COMPACT:
+                return new CompactStringToResizableByteBuffer();
+            default:
+                return new CharAtStringToResizableByteBuffer();
+        }
+    }
+}
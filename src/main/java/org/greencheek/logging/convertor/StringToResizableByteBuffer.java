@@ -0,0 +1,24 @@
+package org.greencheek.logging.convertor;
+
+import org.greencheek.logging.domin.ResizableByteBuffer;
+
+/**
+ * copys the contents of the given string, encoded as UTF-8,
+ * to the given ResizableByteBuffer.
+ */
+public interface StringToResizableByteBuffer {
+
+    /**
+     * The copy strategy for the running JDK, see {@link StringConvertors}
+     */
+    public static final StringToResizableByteBuffer DEFAULT_INSTANCE = StringConvertors.byteBufferConvertor();
+
+    /**
+     * take the given string object, and copy its contents, encoded as
+     * UTF-8, into the given ResizableByteBuffer.
+     *
+     * @param s The string to copy the contents
+     * @param buffer the buffer to copy the bytes to.
+     */
+    public void copyStringToByteBuffer(String s, ResizableByteBuffer buffer);
+}
@@ -8,7 +8,10 @@ import org.greencheek.logging.domin.ResizableCharBuffer;
  */
 public interface StringToResizableCharBuffer {
 
-    public static final StringToResizableCharBuffer DEFAULT_INSTANCE = new UnsafeStringToResizableCharBuffer();
+    /**
+     * The copy strategy for the running JDK, see {@link StringConvertors}
+     */
+    public static final StringToResizableCharBuffer DEFAULT_INSTANCE = StringConvertors.charBufferConvertor();
 
     /**
      * take the given string object, and copy the contents of the
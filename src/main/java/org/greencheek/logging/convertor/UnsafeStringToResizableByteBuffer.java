@@ -0,0 +1,17 @@
+package org.greencheek.logging.convertor;
+
+import org.greencheek.logging.domin.ResizableByteBuffer;
+import org.greencheek.util.UnsafeString;
+
+/**
+ * Uses the Unsafe class to obtain a reference to the char[] array of the string
+ * (JDK 8 and earlier), which is encoded into the ByteBuffer.
+ */
+public class UnsafeStringToResizableByteBuffer implements StringToResizableByteBuffer {
+
+    @Override
+    public void copyStringToByteBuffer(String s, ResizableByteBuffer buffer) {
+        char[] stringarray = UnsafeString.getChars(s);
+        buffer.putCharArrayByOffsetWithResize(stringarray,UnsafeString.getOffset(s),s.length());
+    }
+}
@@ -0,0 +1,65 @@
+package org.greencheek.logging.disruptor;
+
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.TimeoutHandler;
+import org.greencheek.logging.accesscomponents.AccessLogElement;
+import org.greencheek.logging.accesscomponents.CapturingAccessLogElement;
+import org.greencheek.logging.domin.AccessLogEvent;
+import org.greencheek.logging.domin.ResizableByteBuffer;
+
+/**
+ * Renders the log line of an event that was published in capture mode; formatting
+ * the values captured on the request thread, into the event's buffer.
+ *
+ * Either run as a stage of its own, before the handler writing to the log file,
+ * or given the handler to pass each event to once rendered.
+ */
+public class CapturedEventRenderer implements EventHandler<AccessLogEvent>, TimeoutHandler {
+
+    private final EventHandler<AccessLogEvent> next;
+
+    public CapturedEventRenderer() {
+        this(null);
+    }
+
+    public CapturedEventRenderer(EventHandler<AccessLogEvent> next) {
+        this.next = next;
+    }
+
+    @Override
+    public void onEvent(AccessLogEvent event, long sequence, boolean endOfBatch) throws Exception {
+        render(event);
+        if (next != null) {
+            next.onEvent(event, sequence, endOfBatch);
+        }
+    }
+
+    @Override
+    public void onTimeout(long sequence) throws Exception {
+        if (next instanceof TimeoutHandler) {
+            ((TimeoutHandler)next).onTimeout(sequence);
+        }
+    }
+
+    public static void render(AccessLogEvent event) {
+        AccessLogElement[] elements = event.getCapturedElements();
+        if (elements == null) {
+            return;
+        }
+        long[] values = event.getCapturedValues();
+        ResizableByteBuffer captured = event.getCapturedBytes();
+        byte[] bytes = captured.getBuf();
+        int offset = 0;
+        for (int i = 0; i < elements.length; i++) {
+            AccessLogElement element = elements[i];
+            if (element instanceof CapturingAccessLogElement) {
+                ((CapturingAccessLogElement)element).render(event, values[i]);
+            } else {
+                int length = (int)values[i];
+                event.putByteArrayByOffsetWithResize(bytes, offset, length);
+                offset += length;
+            }
+        }
+        event.endCapture();
+    }
+}
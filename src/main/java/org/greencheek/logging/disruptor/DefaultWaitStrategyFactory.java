@@ -2,6 +2,8 @@ package org.greencheek.logging.disruptor;
 
 import com.lmax.disruptor.*;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Created with IntelliJ IDEA.
  * User: dominictootell
@@ -20,12 +22,24 @@ public class DefaultWaitStrategyFactory implements WaitStrategyFactory {
 
     public final WAIT_STRATEGY_TYPE waitStrategyType;
 
+    // If greater than zero, the wait strategy times out after the
+    // consumer has been idle for the given number of millis.
+    public final long idleTimeoutMillis;
+
     public DefaultWaitStrategyFactory(WAIT_STRATEGY_TYPE type) {
+        this(type,0);
+    }
+
+    public DefaultWaitStrategyFactory(WAIT_STRATEGY_TYPE type, long idleTimeoutMillis) {
         waitStrategyType = type;
+        this.idleTimeoutMillis = idleTimeoutMillis;
     }
 
     @Override
     public WaitStrategy createWaitStrategy() {
+        if(idleTimeoutMillis>0) {
+            return createTimeoutWaitStrategy();
+        }
         switch (waitStrategyType) {
             case BLOCKING:
                 return new BlockingWaitStrategy();
@@ -39,4 +53,13 @@ public class DefaultWaitStrategyFactory implements WaitStrategyFactory {
                 return new YieldingWaitStrategy();
         }
     }
+
+    private WaitStrategy createTimeoutWaitStrategy() {
+        switch (waitStrategyType) {
+            case BLOCKING:
+                return new TimeoutBlockingWaitStrategy(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+            default:
+                return new IdleTimeoutWaitStrategy(waitStrategyType,idleTimeoutMillis,TimeUnit.MILLISECONDS);
+        }
+    }
 }
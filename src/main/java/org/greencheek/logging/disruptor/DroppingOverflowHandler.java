@@ -0,0 +1,30 @@
+package org.greencheek.logging.disruptor;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drops the log message, keeping a count of the number of messages that have been dropped.
+ */
+public class DroppingOverflowHandler implements OverflowHandler {
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    @Override
+    public void onOverflow(LogMessageEventTranslator translator) {
+        dropped.incrementAndGet();
+    }
+
+    @Override
+    public long getOverflowCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return 0;
+    }
+
+    @Override
+    public void shutdown() {
+    }
+}
@@ -0,0 +1,82 @@
+package org.greencheek.logging.disruptor;
+
+import com.lmax.disruptor.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Waits in the same manner as the disruptor's sleeping, yielding and busy spin
+ * wait strategies, but gives up waiting once the given timeout has elapsed without
+ * an event becoming available.  A {@link TimeoutException} is thrown, upon which the
+ * event processor notifies the handler (if it is a {@link TimeoutHandler})
+ * that it has been idle.
+ *
+ * The blocking wait strategy equivalent is the disruptor's {@link TimeoutBlockingWaitStrategy}
+ */
+public class IdleTimeoutWaitStrategy implements WaitStrategy {
+
+    private static final int SPIN_TRIES = 100;
+    private static final int RETRIES = 200;
+    // For the busy spin, only look at the clock every so often
+    private static final int BUSY_SPIN_CLOCK_CHECK_MASK = 1023;
+
+    private final DefaultWaitStrategyFactory.WAIT_STRATEGY_TYPE type;
+    private final long timeoutInNanos;
+
+    public IdleTimeoutWaitStrategy(DefaultWaitStrategyFactory.WAIT_STRATEGY_TYPE type,
+                                   long timeout, TimeUnit units) {
+        this.type = type;
+        this.timeoutInNanos = units.toNanos(timeout);
+    }
+
+    @Override
+    public long waitFor(long sequence, Sequence cursor, Sequence dependentSequence, SequenceBarrier barrier)
+            throws AlertException, InterruptedException, TimeoutException {
+        long availableSequence;
+        int counter = type == DefaultWaitStrategyFactory.WAIT_STRATEGY_TYPE.SLEEPING ? RETRIES : SPIN_TRIES;
+        long spins = 0;
+        long deadline = 0;
+
+        while ((availableSequence = dependentSequence.get()) < sequence) {
+            barrier.checkAlert();
+            switch (type) {
+                case BUSY:
+                    if((++spins & BUSY_SPIN_CLOCK_CHECK_MASK) != 0) {
+                        continue;
+                    }
+                    break;
+                case YIELDING:
+                    if (counter != 0) {
+                        --counter;
+                        continue;
+                    }
+                    Thread.yield();
+                    break;
+                default:
+                    if (counter > SPIN_TRIES) {
+                        --counter;
+                        continue;
+                    } else if (counter > 0) {
+                        --counter;
+                        Thread.yield();
+                    } else {
+                        LockSupport.parkNanos(1L);
+                    }
+                    break;
+            }
+
+            if (deadline == 0) {
+                deadline = System.nanoTime() + timeoutInNanos;
+            } else if (System.nanoTime() - deadline > 0) {
+                throw TimeoutException.INSTANCE;
+            }
+        }
+
+        return availableSequence;
+    }
+
+    @Override
+    public void signalAllWhenBlocking() {
+    }
+}
@@ -1,12 +1,16 @@
 package org.greencheek.logging.disruptor;
 
 import com.lmax.disruptor.EventTranslator;
+import com.lmax.disruptor.RingBuffer;
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
 import org.greencheek.logging.accesscomponents.AccessLogElement;
-import org.greencheek.logging.domin.ResizableCharBuffer;
+import org.greencheek.logging.accesscomponents.CapturingAccessLogElement;
+import org.greencheek.logging.domin.AccessLogEvent;
+import org.greencheek.logging.domin.ResizableByteBuffer;
 
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Not thread safe intended for use in a thread local
@@ -23,10 +27,17 @@ class LogMessageEventTranslatorH1 {
 class LogMessageEventTranslatorData extends LogMessageEventTranslatorH1 {
 
     AccessLogElement[] logElements;
+    AccessLogElement[] binaryElements;
     long logDate;
     Request request;
     Response response;
     long time;
+    boolean recordLatency;
+    boolean captureMode;
+    int producerIndex;
+    Object producerRingOwner;
+    RingBuffer<AccessLogEvent> producerRing;
+    ResizableByteBuffer offHeapScratch;
 
 }
 
@@ -38,15 +49,86 @@ class LogMessageEventTranslatorT1 extends LogMessageEventTranslatorData {
 
 public class LogMessageEventTranslator
         extends LogMessageEventTranslatorT1
-        implements EventTranslator<ResizableCharBuffer>
+        implements EventTranslator<AccessLogEvent>
 {
 
 
+    private static final AtomicInteger producerCount = new AtomicInteger();
+
     public LogMessageEventTranslator(){
+        producerIndex = producerCount.getAndIncrement() & Integer.MAX_VALUE;
     }
 
     @Override
-    public void translateTo(ResizableCharBuffer event, long sequence) {
+    public void translateTo(AccessLogEvent event, long sequence) {
+        event.setLogDate(logDate);
+        if (recordLatency) {
+            long start = System.nanoTime();
+            fillEvent(event);
+            long end = System.nanoTime();
+            event.setTimings(end, end - start);
+        } else {
+            fillEvent(event);
+        }
+    }
+
+    private void fillEvent(AccessLogEvent event) {
+        if (binaryElements != null) {
+            captureElements(event, binaryElements);
+        } else if (captureMode) {
+            captureElements(event, logElements);
+        } else if (event.hasOffHeapSlot()) {
+            renderOffHeap(event);
+        } else {
+            addElements(event);
+        }
+    }
+
+    /**
+     * Renders the log line into the thread's scratch buffer, and from there into the
+     * event's off heap slot; or its heap buffer, should the line not fit.
+     */
+    private void renderOffHeap(AccessLogEvent event) {
+        ResizableByteBuffer scratch = offHeapScratch;
+        if (scratch == null) {
+            scratch = offHeapScratch = new ResizableByteBuffer(1024);
+        } else {
+            scratch.reset();
+        }
+        addElements(scratch);
+        if (!event.putOffHeap(scratch.getBuf(), scratch.size())) {
+            event.putByteArrayByOffsetWithResize(scratch.getBuf(), 0, scratch.size());
+        }
+    }
+
+    /**
+     * Renders the log line into the given buffer, regardless of capture mode
+     * or binary format
+     */
+    public void renderTo(ResizableByteBuffer buf) {
+        addElements(buf);
+    }
+
+    /**
+     * Captures a long from each element that can, and renders the rest into
+     * the event's captured bytes; recording the number of bytes each rendered.
+     */
+    private void captureElements(AccessLogEvent event, AccessLogElement[] elements) {
+        long[] values = event.startCapture(elements);
+        ResizableByteBuffer bytes = event.getCapturedBytes();
+        for (int i = 0; i < elements.length; i++) {
+            AccessLogElement element = elements[i];
+            if (element instanceof CapturingAccessLogElement) {
+                values[i] = ((CapturingAccessLogElement)element).capture(logDate, request, response, time);
+            } else {
+                int start = bytes.size();
+                element.addElement(bytes, logDate, request, response, time);
+                values[i] = bytes.size() - start;
+            }
+        }
+    }
+
+    private void addElements(ResizableByteBuffer event) {
         for (int i = 0; i < logElements.length; i++) {
             logElements[i].addElement(event, logDate, request, response, time);
         }
@@ -75,4 +157,50 @@ public class LogMessageEventTranslator
     public void setTime(long time) {
         this.time = time;
     }
+
+    /**
+     * A number unique to the translator, and therefore to the thread that owns it;
+     * handed out in sequence.  Used to pin a producer thread to a shard.
+     */
+    public int getProducerIndex() {
+        return producerIndex;
+    }
+
+    /**
+     * The single producer ring buffer the owning thread publishes to, when each
+     * producer has its own ring buffer; null if the ring buffer has not been created
+     * for the given owner (the owner changes when the valve is restarted).
+     */
+    public RingBuffer<AccessLogEvent> getProducerRing(Object owner) {
+        return producerRingOwner == owner ? producerRing : null;
+    }
+
+    public void setProducerRing(Object owner, RingBuffer<AccessLogEvent> producerRing) {
+        this.producerRingOwner = owner;
+        this.producerRing = producerRing;
+    }
+
+    /**
+     * Whether the log line is captured, to be rendered by the consumer, rather
+     * than rendered when the event is published.
+     */
+    public void setCaptureMode(boolean captureMode) {
+        this.captureMode = captureMode;
+    }
+
+    /**
+     * The elements captured for a binary format record, which is encoded by the
+     * consumer; null when writing lines of text.
+     */
+    public void setBinaryElements(AccessLogElement[] binaryElements) {
+        this.binaryElements = binaryElements;
+    }
+
+    /**
+     * Whether the time taken to render the log line, and the time at which it
+     * was published, are recorded in the event.
+     */
+    public void setRecordLatency(boolean recordLatency) {
+        this.recordLatency = recordLatency;
+    }
 }
\ No newline at end of file
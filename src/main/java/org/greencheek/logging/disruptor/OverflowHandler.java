@@ -0,0 +1,48 @@
+package org.greencheek.logging.disruptor;
+
+/**
+ * Deals with a log message that could not be placed on the ring buffer, because the
+ * ring buffer is full (i.e. the consumer is not keeping up with the rate at which
+ * log messages are being produced; for example due to a slow disk).
+ *
+ * Called on the thread that is processing the request, so implementations must be thread safe.
+ */
+public interface OverflowHandler {
+
+    public enum OVERFLOW_POLICY_TYPE {
+        // wait for space in the ring buffer
+        BLOCK,
+        // drop the log message, counting the number dropped
+        DROP,
+        // drop the log message, periodically writing a summary line to the log
+        // of the number that have been dropped
+        DROP_WITH_SUMMARY,
+        // write the log message to a separate overflow file
+        SPILL
+    }
+
+    /**
+     * The ring buffer is full.  Deal with the log message that the translator would
+     * have written to the ring buffer.
+     *
+     * @param translator contains the details of the log message
+     */
+    public void onOverflow(LogMessageEventTranslator translator);
+
+    /**
+     * @return The number of log messages that have not been written to the log file
+     *         (either dropped, or spilled to the overflow file).
+     */
+    public long getOverflowCount();
+
+    /**
+     * @return Of the overflow count, the number of log messages the handler failed to deal
+     *         with (for example could not be written to the overflow file), and were lost.
+     */
+    public long getFailedCount();
+
+    /**
+     * Release any resources (i.e. files) held by the handler
+     */
+    public void shutdown();
+}
@@ -0,0 +1,343 @@
+package org.greencheek.logging.disruptor;
+
+import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.lmax.disruptor.EventFactory;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.Sequence;
+import com.lmax.disruptor.TimeoutHandler;
+import org.apache.juli.logging.Log;
+import org.greencheek.logging.domin.AccessLogEvent;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An alternative to a single multi producer ring buffer.  Each producer thread
+ * is given its own single producer ring buffer, so that publishing a log message
+ * never contends with another request thread on the ring buffer's cursor.
+ *
+ * One consumer thread ({@link #run()}) drains all the rings, passing the events
+ * to the handler.  Each pass over the rings takes what is available in each ring
+ * at the start of the pass; the last event of the pass is the end of the batch.
+ * By default each ring is drained in turn, so log lines are only in order per
+ * producer; optionally the rings are merged in order of the log date of their events.
+ *
+ * The ring of a thread that has died is removed once it is empty.
+ */
+public class PerProducerRingTransport implements Runnable {
+
+    private static final int SPIN_TRIES = 100;
+    private static final int RETRIES = 200;
+    // When spinning, only look at the clock every so often
+    private static final int CLOCK_CHECK_MASK = 1023;
+
+    /**
+     * A producer's ring, and the consumer's position in it
+     */
+    private static class ProducerRing {
+        final RingBuffer<AccessLogEvent> ringBuffer;
+        final Sequence sequence = new Sequence();
+        final WeakReference<Thread> producer;
+        // the cursor of the ring, at the start of the current pass
+        long available;
+
+        ProducerRing(RingBuffer<AccessLogEvent> ringBuffer, Thread producer) {
+            this.ringBuffer = ringBuffer;
+            this.producer = new WeakReference<Thread>(producer);
+            ringBuffer.addGatingSequences(sequence);
+        }
+    }
+
+    private final EventFactory<AccessLogEvent> eventFactory;
+    private final int ringSize;
+    private final EventHandler<AccessLogEvent> handler;
+    private final TimeoutHandler timeoutHandler;
+    private final boolean orderByDate;
+    private final DefaultWaitStrategyFactory.WAIT_STRATEGY_TYPE waitStrategyType;
+    private final long idleTimeoutNanos;
+    private final Log log;
+
+    // copy on write, the consumer reads the array without locking
+    private volatile ProducerRing[] rings = new ProducerRing[0];
+
+    private final ThreadLocal<RingBuffer<AccessLogEvent>> threadRing = new ThreadLocal<RingBuffer<AccessLogEvent>>();
+
+    private volatile boolean running = true;
+    // stop straight away, leaving any events in the rings unhandled
+    private volatile boolean halted = false;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    /**
+     * @param eventFactory creates the slots of each ring
+     * @param ringSize the size of each producer's ring, a power of two
+     * @param handler given each event
+     * @param orderByDate merge the rings in order of the events' log date
+     * @param waitStrategyType how the consumer waits when all the rings are empty.
+     *                         Blocking is treated as sleeping, as the producers do not signal the consumer.
+     * @param idleTimeoutMillis if greater than zero, and the handler is a {@link TimeoutHandler},
+     *                          the handler is notified each time the rings have been empty for this long
+     * @param log
+     */
+    public PerProducerRingTransport(EventFactory<AccessLogEvent> eventFactory, int ringSize,
+                                    EventHandler<AccessLogEvent> handler, boolean orderByDate,
+                                    DefaultWaitStrategyFactory.WAIT_STRATEGY_TYPE waitStrategyType,
+                                    long idleTimeoutMillis, Log log) {
+        this.eventFactory = eventFactory;
+        this.ringSize = ringSize;
+        this.handler = handler;
+        this.timeoutHandler = handler instanceof TimeoutHandler ? (TimeoutHandler)handler : null;
+        this.orderByDate = orderByDate;
+        this.waitStrategyType = waitStrategyType;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.log = log;
+    }
+
+    /**
+     * Returns the calling thread's ring buffer, creating it on first use.  The ring
+     * is cached in the thread's translator, to save on a second thread local lookup.
+     */
+    public RingBuffer<AccessLogEvent> ringFor(LogMessageEventTranslator translator) {
+        RingBuffer<AccessLogEvent> ringBuffer = translator.getProducerRing(this);
+        if (ringBuffer == null) {
+            ringBuffer = threadRing.get();
+            if (ringBuffer == null) {
+                // the consumer never waits on the ring's wait strategy; so one is used that
+                // does nothing when signalled, rather than the default blocking strategy's
+                // lock and signalAll on each publish
+                ringBuffer = RingBuffer.createSingleProducer(eventFactory, ringSize, new BusySpinWaitStrategy());
+                register(new ProducerRing(ringBuffer, Thread.currentThread()));
+                threadRing.set(ringBuffer);
+            }
+            translator.setProducerRing(this, ringBuffer);
+        }
+        return ringBuffer;
+    }
+
+    private synchronized void register(ProducerRing ring) {
+        ProducerRing[] current = rings;
+        ProducerRing[] updated = new ProducerRing[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = ring;
+        rings = updated;
+    }
+
+    private synchronized void removeDeadProducers() {
+        ProducerRing[] current = rings;
+        int live = 0;
+        ProducerRing[] updated = new ProducerRing[current.length];
+        for (ProducerRing ring : current) {
+            if (ring.producer.get() != null || ring.ringBuffer.getCursor() > ring.sequence.get()) {
+                updated[live++] = ring;
+            }
+        }
+        if (live != current.length) {
+            ProducerRing[] trimmed = new ProducerRing[live];
+            System.arraycopy(updated, 0, trimmed, 0, live);
+            rings = trimmed;
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            int idleCounter = 0;
+            long idleSince = 0;
+            boolean timeoutNotified = false;
+            while (true) {
+                boolean stopping = !running;
+                if (halted) {
+                    break;
+                }
+                int processed = orderByDate ? processByDate(rings) : processInTurn(rings);
+                if (processed > 0) {
+                    idleCounter = 0;
+                    idleSince = 0;
+                    timeoutNotified = false;
+                    continue;
+                }
+                if (stopping || Thread.currentThread().isInterrupted()) {
+                    // nothing left after being asked to stop
+                    break;
+                }
+
+                if (idleCounter < Integer.MAX_VALUE) {
+                    idleCounter++;
+                }
+                boolean parked = idle(idleCounter);
+                if (parked || (idleCounter & CLOCK_CHECK_MASK) == 0) {
+                    // check on the idle timeout, and tidy up after dead threads
+                    long now = System.nanoTime();
+                    if (idleSince == 0) {
+                        idleSince = now;
+                        removeDeadProducers();
+                    } else if (!timeoutNotified && idleTimeoutNanos > 0 && now - idleSince > idleTimeoutNanos) {
+                        timeoutNotified = true;
+                        notifyTimeout();
+                    }
+                }
+            }
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * Backs off when there is nothing to process; in the same manner as
+     * the disruptor's busy spin, yielding and sleeping wait strategies.
+     *
+     * @param counter the number of times in a row there has been nothing to process
+     * @return true if the thread parked
+     */
+    private boolean idle(int counter) {
+        switch (waitStrategyType) {
+            case BUSY:
+                return false;
+            case YIELDING:
+                if (counter > SPIN_TRIES) {
+                    Thread.yield();
+                }
+                return false;
+            default:
+                if (counter > RETRIES) {
+                    LockSupport.parkNanos(1L);
+                    return true;
+                } else if (counter > SPIN_TRIES) {
+                    Thread.yield();
+                }
+                return false;
+        }
+    }
+
+    private void notifyTimeout() {
+        if (timeoutHandler != null) {
+            try {
+                timeoutHandler.onTimeout(-1);
+            } catch (Throwable e) {
+                log.error("Exception notifying access log handler of idle timeout", e);
+            }
+        }
+    }
+
+    /**
+     * Drains each ring in turn, up to the cursor of the ring at the start of the pass
+     */
+    private int processInTurn(ProducerRing[] rings) {
+        int last = -1;
+        for (int i = 0; i < rings.length; i++) {
+            ProducerRing ring = rings[i];
+            ring.available = ring.ringBuffer.getCursor();
+            if (ring.available > ring.sequence.get()) {
+                last = i;
+            }
+        }
+
+        int processed = 0;
+        for (int i = 0; i <= last; i++) {
+            ProducerRing ring = rings[i];
+            long next = ring.sequence.get() + 1;
+            long available = ring.available;
+            if (next > available) {
+                continue;
+            }
+            for (long seq = next; seq <= available; seq++) {
+                if (halted) {
+                    ring.sequence.set(seq - 1);
+                    return processed;
+                }
+                onEvent(ring.ringBuffer.get(seq), seq, i == last && seq == available);
+                processed++;
+            }
+            ring.sequence.set(available);
+        }
+        return processed;
+    }
+
+    /**
+     * Merges the rings in order of the log date of the next event in each ring,
+     * up to the cursor of each ring at the start of the pass
+     */
+    private int processByDate(ProducerRing[] rings) {
+        int remaining = 0;
+        for (ProducerRing ring : rings) {
+            ring.available = ring.ringBuffer.getCursor();
+            remaining += (int)(ring.available - ring.sequence.get());
+        }
+
+        int processed = 0;
+        while (remaining > 0 && !halted) {
+            ProducerRing earliest = null;
+            long earliestDate = Long.MAX_VALUE;
+            for (ProducerRing ring : rings) {
+                long next = ring.sequence.get() + 1;
+                if (next <= ring.available) {
+                    long date = ring.ringBuffer.get(next).getLogDate();
+                    if (earliest == null || date < earliestDate) {
+                        earliest = ring;
+                        earliestDate = date;
+                    }
+                }
+            }
+            long seq = earliest.sequence.get() + 1;
+            remaining--;
+            onEvent(earliest.ringBuffer.get(seq), seq, remaining == 0);
+            // the slot is free for the producer as soon as it has been handled
+            earliest.sequence.set(seq);
+            processed++;
+        }
+        return processed;
+    }
+
+    private void onEvent(AccessLogEvent event, long sequence, boolean endOfBatch) {
+        try {
+            handler.onEvent(event, sequence, endOfBatch);
+        } catch (Throwable e) {
+            // as with the IgnoreExceptionHandler, carry on with the next event
+            log.debug("Exception processing access log event: " + sequence, e);
+        }
+    }
+
+    /**
+     * The number of free slots across all the producers' rings
+     */
+    public long remainingCapacity() {
+        long remaining = 0;
+        for (ProducerRing ring : rings) {
+            remaining += ring.ringBuffer.remainingCapacity();
+        }
+        return remaining;
+    }
+
+    /**
+     * The number of events published, but not yet handled, across all the producers' rings
+     */
+    public long lag() {
+        long lag = 0;
+        for (ProducerRing ring : rings) {
+            lag += ring.ringBuffer.getCursor() - ring.sequence.get();
+        }
+        return lag;
+    }
+
+    public int getProducerCount() {
+        return rings.length;
+    }
+
+    /**
+     * Stops the consumer once the events in the rings have been handled, waiting at
+     * most the given time for it to do so.  If it has not stopped by then, it is halted;
+     * stopping after the event it is handling, leaving the rest unhandled.
+     *
+     * @return true if the consumer stopped within the timeout
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        running = false;
+        if (stopped.await(timeout, unit)) {
+            return true;
+        }
+        halted = true;
+        return false;
+    }
+}
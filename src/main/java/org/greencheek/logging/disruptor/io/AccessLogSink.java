@@ -0,0 +1,48 @@
+package org.greencheek.logging.disruptor.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Where the {@link LogEventHandler} sends the log lines: the log file (the default), or a
+ * socket to a local log agent.  The handler writes whole pages of lines, or the lines of a
+ * batch gathered straight from the ring buffer slots; a line longer than a page can be
+ * split across writes.
+ *
+ * Not thread safe, it is only used by the single thread that is consuming
+ * log messages from the ring buffer.
+ */
+public interface AccessLogSink {
+
+    public enum SINK_TYPE {
+        FILE,
+        SYSLOG_UDP,
+        TCP,
+        UNIX_SOCKET
+    }
+
+    /**
+     * Write the given bytes, a page of log lines
+     */
+    public void write(byte[] bytes, int offset, int length) throws IOException;
+
+    /**
+     * Write what remains of each of the given buffers, one after the other.  The buffers
+     * are only valid for the duration of the call.
+     */
+    public void write(ByteBuffer[] buffers, int offset, int length) throws IOException;
+
+    /**
+     * Called when a partially filled page has been written, as the log is quiet or the
+     * page has been held for the max flush latency.  Sinks that hold on to what has been
+     * written, send it.
+     */
+    public void flush() throws IOException;
+
+    /**
+     * The number of bytes of log lines that could not be sent, and were dropped
+     */
+    public long getBytesDropped();
+
+    public void close() throws IOException;
+}
@@ -0,0 +1,170 @@
+package org.greencheek.logging.disruptor.io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses what is written into blocks, each of which is written to the underlying
+ * writer as a separate gzip member (frame).  A file of concatenated gzip members is
+ * itself a gzip file, so the log can be read with the standard tools; and as each frame
+ * can be decompressed on its own, a tool can seek to any frame using the index.
+ *
+ * A block is compressed when it is full, or when the log handler flushes a partially
+ * filled page.  For each frame an entry is appended to the index file
+ * (see {@link #indexFileFor(File)}), of the frame's offset in the log file (8 bytes),
+ * its compressed length (4 bytes) and its uncompressed length (4 bytes); big endian.
+ */
+public class CompressingLogFileWriter implements LogFileWriter {
+
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private static final byte[] GZIP_HEADER = {
+            0x1f, (byte) 0x8b,      // magic
+            Deflater.DEFLATED,      // compression method
+            0,                      // flags
+            0, 0, 0, 0,             // modification time
+            0,                      // extra flags
+            (byte) 0xff             // operating system, unknown
+    };
+    private static final int GZIP_TRAILER_SIZE = 8;
+
+    private final LogFileWriter writer;
+    private final DataOutputStream index;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+
+    private final byte[] block;
+    private int blockPosition = 0;
+    private byte[] frame;
+
+    /**
+     * @param writer the writer of the log file, that the frames are written to
+     * @param pathname the log file, for which the index is created or appended to
+     * @param level the deflate compression level, 1 (fastest) to 9 (smallest)
+     * @param blockSize the amount of log data compressed into one frame
+     * @throws IOException
+     */
+    public CompressingLogFileWriter(LogFileWriter writer, File pathname,
+                                    int level, int blockSize) throws IOException {
+        this.writer = writer;
+        this.index = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(indexFileFor(pathname), true), 4096));
+        this.deflater = new Deflater(level, true);
+        this.block = new byte[blockSize];
+        this.frame = new byte[GZIP_HEADER.length + blockSize + (blockSize >> 3) + 64];
+    }
+
+    /**
+     * The index of the frames of the given log file
+     */
+    public static File indexFileFor(File pathname) {
+        return new File(pathname.getPath() + INDEX_SUFFIX);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            int toCopy = Math.min(length, block.length - blockPosition);
+            System.arraycopy(bytes, offset, block, blockPosition, toCopy);
+            blockPosition += toCopy;
+            offset += toCopy;
+            length -= toCopy;
+            if (blockPosition == block.length) {
+                writeFrame();
+            }
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer[] buffers, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            ByteBuffer buffer = buffers[i];
+            while (buffer.hasRemaining()) {
+                int toCopy = Math.min(buffer.remaining(), block.length - blockPosition);
+                buffer.get(block, blockPosition, toCopy);
+                blockPosition += toCopy;
+                if (blockPosition == block.length) {
+                    writeFrame();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (blockPosition > 0) {
+            writeFrame();
+        }
+        index.flush();
+    }
+
+    private void writeFrame() throws IOException {
+        System.arraycopy(GZIP_HEADER, 0, frame, 0, GZIP_HEADER.length);
+        int size = GZIP_HEADER.length;
+
+        deflater.reset();
+        deflater.setInput(block, 0, blockPosition);
+        deflater.finish();
+        while (!deflater.finished()) {
+            if (size == frame.length) {
+                byte[] bigger = new byte[frame.length * 2];
+                System.arraycopy(frame, 0, bigger, 0, size);
+                frame = bigger;
+            }
+            size += deflater.deflate(frame, size, frame.length - size);
+        }
+
+        crc.reset();
+        crc.update(block, 0, blockPosition);
+        if (frame.length - size < GZIP_TRAILER_SIZE) {
+            byte[] bigger = new byte[size + GZIP_TRAILER_SIZE];
+            System.arraycopy(frame, 0, bigger, 0, size);
+            frame = bigger;
+        }
+        size = putIntLE(frame, size, (int) crc.getValue());
+        size = putIntLE(frame, size, blockPosition);
+
+        long offset = writer.position();
+        writer.write(frame, 0, size);
+        index.writeLong(offset);
+        index.writeInt(size);
+        index.writeInt(blockPosition);
+        blockPosition = 0;
+    }
+
+    private static int putIntLE(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+        bytes[offset + 2] = (byte) (value >>> 16);
+        bytes[offset + 3] = (byte) (value >>> 24);
+        return offset + 4;
+    }
+
+    /**
+     * The position in the log file up to which compressed data has been written
+     */
+    @Override
+    public long position() {
+        return writer.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            deflater.end();
+            try {
+                index.close();
+            } finally {
+                writer.close();
+            }
+        }
+    }
+}
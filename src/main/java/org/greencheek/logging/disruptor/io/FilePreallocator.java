@@ -0,0 +1,87 @@
+package org.greencheek.logging.disruptor.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Preallocates log files ahead of time, on a low priority background thread; so that
+ * when a log file is rotated the next file only has to be renamed into place, rather
+ * than the thread writing log messages having to write the blank pages of the new file.
+ */
+public class FilePreallocator {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "AccessLogPreallocator");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    /**
+     * Preallocates the given file in the background.  A file that already exists, at the
+     * given size, is taken to have been preallocated previously.
+     *
+     * @param pathname the file to create
+     * @param size the size of the file
+     * @param pageSize the size of the blank pages written to the file
+     * @param sparse if true the length of the file is set, rather than blank pages being written
+     * @return the file, once it has been preallocated
+     */
+    public Future<File> preallocate(final File pathname, final long size,
+                                    final int pageSize, final boolean sparse) {
+        return executor.submit(new Callable<File>() {
+            @Override
+            public File call() throws Exception {
+                // blank pages are only written whole
+                long length = sparse ? size : (size + pageSize - 1) / pageSize * pageSize;
+                if (pathname.exists()) {
+                    if (pathname.length() == length) {
+                        return pathname;
+                    }
+                    if (!pathname.delete()) {
+                        throw new IOException("Unable to remove partially preallocated file:" + pathname);
+                    }
+                }
+                preallocate(pathname, size, new byte[pageSize], sparse);
+                return pathname;
+            }
+        });
+    }
+
+    /**
+     * Creates the file, and writes blank pages to it (or sets its length if sparse)
+     * up to the given size.
+     */
+    public static void preallocate(File pathname, long size, byte[] blankPage,
+                                   boolean sparse) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(pathname, "rw");
+        try {
+            if (sparse) {
+                file.setLength(size);
+            } else {
+                for (long i = 0; i < size; i += blankPage.length) {
+                    file.write(blankPage, 0, blankPage.length);
+                }
+            }
+            file.getFD().sync();
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Stops the preallocation thread.  A file being preallocated is left as it is.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
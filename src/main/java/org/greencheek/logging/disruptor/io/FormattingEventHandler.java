@@ -0,0 +1,56 @@
+package org.greencheek.logging.disruptor.io;
+
+import com.lmax.disruptor.EventHandler;
+import org.greencheek.logging.disruptor.CapturedEventRenderer;
+import org.greencheek.logging.domin.AccessLogEvent;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One of a number of handlers that format log lines in parallel, ahead of the
+ * single handler writing to the log file.  Handler <code>ordinal</code> of
+ * <code>count</code> only formats the events whose sequence modulo <code>count</code>
+ * is its ordinal.  Formatting renders a line captured in capture mode, and transcodes
+ * the line (with its line ending) to the log file's charset when it is not UTF-8.
+ *
+ * The handlers stripe the sequences between them, rather than being a disruptor
+ * WorkerPool, as a WorkProcessor treats a wait strategy timeout as a processed
+ * sequence; skipping an event.  The idle flushing of the log file relies on the
+ * wait strategy timing out.
+ */
+public class FormattingEventHandler implements EventHandler<AccessLogEvent> {
+
+    private final long ordinal;
+    private final long count;
+    private final LineEncoder encoder;
+
+    /**
+     * @param ordinal which of the handlers this is, from 0
+     * @param count the number of handlers
+     * @param encoder transcodes the line, null if the line does not need transcoding
+     */
+    public FormattingEventHandler(int ordinal, int count, LineEncoder encoder) {
+        this.ordinal = ordinal;
+        this.count = count;
+        this.encoder = encoder;
+    }
+
+    @Override
+    public void onEvent(AccessLogEvent event, long sequence, boolean endOfBatch) throws Exception {
+        if (sequence % count != ordinal) {
+            return;
+        }
+
+        CapturedEventRenderer.render(event);
+
+        if (encoder != null) {
+            event.append(LogEventHandler.lineEndingsBytes);
+            ByteBuffer encoded = encoder.encode(event);
+            if (encoded != null) {
+                event.setEncoded(encoded);
+            } else {
+                event.setEncodeFailed();
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.greencheek.logging.disruptor.io;
+
+import org.greencheek.logging.domin.ResizableByteBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+
+/**
+ * Log lines are rendered as UTF-8.  When the log file has been configured with a
+ * different charset, the line is transcoded with one of these.
+ *
+ * Not thread safe, each thread encoding lines needs its own.
+ */
+public class LineEncoder {
+
+    private final CharsetEncoder encoder;
+
+    public LineEncoder(Charset charset) {
+        this.encoder = charset.newEncoder();
+    }
+
+    /**
+     * @return the encoder for the given encoding, or null if lines do not need transcoding;
+     * as the encoding is UTF-8, not set, or not supported.
+     */
+    public static LineEncoder forEncoding(String encoding) {
+        if (encoding == null) {
+            return null;
+        }
+        Charset charset;
+        try {
+            charset = Charset.forName(encoding);
+        } catch (UnsupportedCharsetException e) {
+            return null;
+        } catch (IllegalCharsetNameException e) {
+            return null;
+        }
+        return charset.equals(ResizableByteBuffer.UTF8) ? null : new LineEncoder(charset);
+    }
+
+    /**
+     * @return the line in the encoder's charset, or null if the line cannot be encoded
+     */
+    public ByteBuffer encode(ResizableByteBuffer line) {
+        try {
+            return encoder.encode(CharBuffer.wrap(line.toString()));
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+    }
+}
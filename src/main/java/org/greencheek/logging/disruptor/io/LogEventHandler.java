@@ -1,45 +1,70 @@
 package org.greencheek.logging.disruptor.io;
 
 import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.TimeoutHandler;
 import org.apache.catalina.Globals;
 import org.apache.juli.logging.Log;
 import org.apache.tomcat.util.ExceptionUtils;
 import org.apache.tomcat.util.buf.B2CConverter;
 import org.apache.tomcat.util.res.StringManager;
-import org.greencheek.logging.domin.ResizableCharBuffer;
+import org.greencheek.logging.binary.BinaryRecordEncoder;
+import org.greencheek.logging.disruptor.OverflowHandler;
+import org.greencheek.logging.domin.AccessLogEvent;
+import org.greencheek.logging.domin.ResizableByteBuffer;
+import org.greencheek.util.CachedClock;
 import org.greencheek.util.FastDatePrinter;
+import org.greencheek.util.LatencyHistogram;
+import org.greencheek.util.SingleWriterCounter;
 
 import java.io.*;
 import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
 import java.nio.channels.Channel;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
-import java.nio.charset.CharsetEncoder;
-import java.nio.charset.UnsupportedCharsetException;
 import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.Arrays;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Event handler that writes in batches, log messages to a file.
- * The log message are written pages at a time to disk.  The
+ * The log message are written pages at a time to disk.  A partially
+ * filled page is written at the end of a batch once it has been held for
+ * the max flush latency, or when no events have arrived within the
+ * wait strategy's timeout (see {@link #onTimeout(long)}).  The
  * file that is written to is rotated, and upon rotation the file
  * is pre allocated to a given size.  This is so that the size of
- * the file does not have to be adjusted during processing
+ * the file does not have to be adjusted during processing.
+ * Whether the file needs rotating is checked before the first log message
+ * after a page is written; the page is written to the file it was filled for.
+ *
+ * Rather than to a file, the pages can be written to a socket {@link AccessLogSink sink},
+ * such as a local log agent; in which case there is no rotation, and each page is
+ * filled with whole lines (bar lines longer than a page).
  *
  */
-public class LogEventHandler implements EventHandler<ResizableCharBuffer> {
+public class LogEventHandler implements EventHandler<AccessLogEvent>, TimeoutHandler {
 
     static final char[] lineEndings =  System.getProperty("line.separator").toCharArray();
     static final byte[] lineEndingsBytes = new byte[lineEndings.length];
+    private static final byte[] NO_LINE_ENDING = new byte[0];
     static {
         for(int i=0;i<lineEndings.length;i++) {
             lineEndingsBytes[i] = (byte)lineEndings[i];
         }
     }
 
+    /**
+     * The bytes written at the end of each log line
+     */
+    public static byte[] getLineEnding() {
+        return lineEndingsBytes.clone();
+    }
+
 
     protected String encoding = null;
 
@@ -82,10 +107,40 @@ public class LogEventHandler implements EventHandler<ResizableCharBuffer> {
 
 
     /**
-     * The PrintWriter to which we are currently logging, if any.
+     * The writer to which we are currently logging, if any.
+     */
+    protected LogFileWriter writer = null;
+
+    /**
+     * Where the pages are written; the current log file's writer, unless a socket
+     * sink has been given.
      */
-    protected RandomAccessFile writer = null;
-    protected FileChannel writerChannel = null;
+    private final AccessLogSink sink;
+    private final boolean fileOutput;
+
+    /**
+     * How the log file is written to; with a RandomAccessFile or memory mapped
+     */
+    private final LogFileWriter.WRITER_TYPE writerType;
+
+    /**
+     * The size of the region of the log file that is mapped into memory
+     * when the writer type is memory mapped.
+     */
+    private final int mappedWindowSize;
+
+    /**
+     * Whether the log file is compressed, and if so the deflate level and the
+     * amount of log data compressed into each frame.
+     */
+    private final LogFileWriter.COMPRESSION_TYPE compression;
+    private final int compressionLevel;
+    private final int compressionBlockSize;
+
+    /**
+     * If set, log files are handed to it to be compressed once they have been rotated
+     */
+    private RotatedFileCompressor rotatedFileCompressor = null;
 
 
     /**
@@ -102,9 +157,36 @@ public class LogEventHandler implements EventHandler<ResizableCharBuffer> {
     protected File currentLogFile = null;
 
     /**
-     * Instant when the log daily rotation was last checked.
+     * The instant at which the date stamp of the log file next needs to be checked;
+     * the start of the next rotation interval, or the next change of the finest
+     * field of the file date format.
+     */
+    private long nextRotationCheck = 0L;
+
+    /**
+     * The granularity of the file date format, the millis between changes in the
+     * date stamp (a day for anything coarser than hours)
      */
-    private long rotationLastChecked = 0L;
+    private final long dateStampGranularityMillis;
+
+    /**
+     * If greater than zero, a new log file is started once the current one reaches this
+     * size; the files of the same date stamp being numbered <code>.1</code>, <code>.2</code>, ...
+     */
+    private final long maxFileSize;
+
+    /**
+     * If greater than zero the log file is rotated at this interval, the date stamp
+     * being that of the start of the interval (in the default time zone).  The file
+     * date format needs to be fine enough to tell the intervals apart.
+     */
+    private final long rotationIntervalMillis;
+
+    /**
+     * The number of the current file, among the files of the same date stamp.
+     * 0 for the first, which has no number.
+     */
+    private int fileSequence = 0;
 
     /**
      * Do we check for log file existence? Helpful if an external
@@ -112,6 +194,9 @@ public class LogEventHandler implements EventHandler<ResizableCharBuffer> {
      */
     private boolean checkExists = false;
 
+    // set from the background thread, the writer checks whether the log file has been moved
+    private volatile boolean externalRotationCheckRequested = false;
+
 
     /**
      * Buffered logging.
@@ -122,14 +207,107 @@ public class LogEventHandler implements EventHandler<ResizableCharBuffer> {
     private final byte[] ioBuffer;
     private int currentPosition = 0;
 
+    /**
+     * Lines held in off heap slots (see {@link AccessLogEvent#getOffHeapLine()}), and if
+     * <code>gatherHeapLines</code> is set the lines in the slots' heap buffers, waiting to
+     * be written to the file straight from the slots, with one gathering write.  The
+     * ring buffer only frees the slots once the batch has been processed, so they are
+     * always written by the end of the batch, or once the max number of lines have been
+     * gathered.  Only one of the page, or the gathered lines, has lines waiting to be
+     * written at any one time; keeping the lines in order.
+     */
+    private boolean gatherHeapLines = false;
+    private ByteBuffer[] gathered = new ByteBuffer[1024];
+    private int gatheredCount = 0;
+    private long gatheredBytes = 0;
+
     private final int ioWriteSize;
-    private final int ioWriteSizeMinusOne;
     private final int ioPreallocateFileSize;
+
+    /**
+     * Preallocate files by setting their length, rather than writing blank pages
+     */
+    private final boolean sparsePreallocation;
+
+    /**
+     * If set, the next log file is preallocated ahead of time as a spare file, that is
+     * renamed into place on rotation.  If the spare is not ready, the new file is not
+     * preallocated, rather than preallocating it on the thread writing log messages.
+     */
+    private FilePreallocator preallocator = null;
+    private Future<File> spareFile = null;
+    private static final String SPARE_FILE_NAME = "preallocated";
     public final byte[] BLANK_PAGE;
 
 
-    private static final Charset UTF8 = Charset.forName( "UTF-8" );
-    private final CharsetEncoder encoder;
+    private static final Charset UTF8 = ResizableByteBuffer.UTF8;
+
+    /**
+     * Log lines arrive already encoded as UTF-8.  The encoder is only
+     * used if the log file has been configured with a different charset,
+     * in which case the line is transcoded; unless that has already been
+     * done by a formatting stage.
+     */
+    private final LineEncoder encoder;
+
+    /**
+     * The max number of millis a partially filled page is held before
+     * being written to the file, at the end of a batch.
+     */
+    private final long maxFlushLatencyMillis;
+
+    /**
+     * The time at which the current page was first seen to have unwritten
+     * log lines at the end of a batch, 0 if none.
+     */
+    private long unflushedSince = 0;
+
+    private volatile boolean flushRequested = false;
+
+    /**
+     * If set, the time at the end of a batch is read from it, rather than the system clock
+     */
+    private CachedClock clock = null;
+
+    // set once a page has been written, the log file is checked before the next log message
+    private boolean fileCheckDue = false;
+
+    /**
+     * If set, log messages are written as binary records rather than lines of text.
+     * A new segment, with its own dictionary, is started each time a log file is opened.
+     */
+    private BinaryRecordEncoder recordEncoder = null;
+    private ResizableByteBuffer record;
+
+    private static final String OVERFLOW_SUMMARY_PREFIX = "# ";
+    private static final String OVERFLOW_SUMMARY_SUFFIX = " access log messages dropped, ring buffer full";
+
+    /**
+     * If set, the number of messages dropped by the overflow handler is
+     * periodically written to the log
+     */
+    private OverflowHandler overflowHandler = null;
+    private long overflowSummaryIntervalMillis;
+    private long overflowsReported = 0;
+    private long lastOverflowSummary = 0;
+
+    // metrics, only updated by the thread processing events
+    private final SingleWriterCounter eventsWritten = new SingleWriterCounter();
+    private final SingleWriterCounter bytesWritten = new SingleWriterCounter();
+    private final SingleWriterCounter encodeFailures = new SingleWriterCounter();
+    private final SingleWriterCounter pagesFlushed = new SingleWriterCounter();
+    private final SingleWriterCounter gatheringWrites = new SingleWriterCounter();
+    private final SingleWriterCounter rotations = new SingleWriterCounter();
+    private final SingleWriterCounter writeNanos = new SingleWriterCounter();
+
+    // latencies of the log lines whose publish time was recorded; the time from
+    // publish to the page holding the line being written, and the time to render the line.
+    private final LatencyHistogram publishToWriteLatency = new LatencyHistogram();
+    private final LatencyHistogram translateLatency = new LatencyHistogram();
+
+    // publish times of the log lines in the current page, waiting on the page being written
+    private long[] pagePublishNanos = new long[64];
+    private int pagePublishCount = 0;
 
     /**
      *
@@ -141,6 +319,15 @@ public class LogEventHandler implements EventHandler<ResizableCharBuffer> {
      * @param rotatable
      * @param renameOnRotate
      * @param syncWrite
+     * @param writerType
+     * @param mappedWindowSize
+     * @param maxFlushLatencyMillis
+     * @param compression
+     * @param compressionLevel
+     * @param compressionBlockSize
+     * @param maxFileSize
+     * @param rotationIntervalMinutes
+     * @param sparsePreallocation
      */
     public LogEventHandler(StringManager sm,
                            String encoding,
@@ -148,22 +335,39 @@ public class LogEventHandler implements EventHandler<ResizableCharBuffer> {
                            String directory,
                            boolean rotatable, boolean renameOnRotate,
                            boolean syncWrite, int ioWriteSize, int ioPreallocateFileSize,
-                           String suffix, String prefix, boolean checkExists) {
-
-        Charset charset;
-        try {
-            if(encoding!=null) {
-                charset = Charset.forName(encoding);
-            } else {
-                charset = UTF8;
-            }
-        } catch(UnsupportedCharsetException cex) {
-            charset = UTF8;
-        }
+                           String suffix, String prefix, boolean checkExists,
+                           LogFileWriter.WRITER_TYPE writerType, int mappedWindowSize,
+                           long maxFlushLatencyMillis, LogFileWriter.COMPRESSION_TYPE compression,
+                           int compressionLevel, int compressionBlockSize,
+                           long maxFileSize, int rotationIntervalMinutes, boolean sparsePreallocation) {
+        this(sm,encoding,log,format,directory,rotatable,renameOnRotate,syncWrite,ioWriteSize,
+                ioPreallocateFileSize,suffix,prefix,checkExists,writerType,mappedWindowSize,
+                maxFlushLatencyMillis,compression,compressionLevel,compressionBlockSize,
+                maxFileSize,rotationIntervalMinutes,sparsePreallocation,null);
+    }
 
-        this.encoder = charset.newEncoder();
+    /**
+     * As above, but writing to the given sink rather than to log files, if it is not null
+     *
+     * @param sink
+     */
+    public LogEventHandler(StringManager sm,
+                           String encoding,
+                           Log log, String format,
+                           String directory,
+                           boolean rotatable, boolean renameOnRotate,
+                           boolean syncWrite, int ioWriteSize, int ioPreallocateFileSize,
+                           String suffix, String prefix, boolean checkExists,
+                           LogFileWriter.WRITER_TYPE writerType, int mappedWindowSize,
+                           long maxFlushLatencyMillis, LogFileWriter.COMPRESSION_TYPE compression,
+                           int compressionLevel, int compressionBlockSize,
+                           long maxFileSize, int rotationIntervalMinutes, boolean sparsePreallocation,
+                           AccessLogSink sink) {
+
+        this.fileOutput = sink == null;
+        this.sink = fileOutput ? new FileSink() : sink;
+        this.encoder = LineEncoder.forEncoding(encoding);
         this.ioWriteSize = ioWriteSize;
-        this.ioWriteSizeMinusOne = ioWriteSize-1;
         this.BLANK_PAGE = new byte[ioWriteSize];
         this.ioPreallocateFileSize = ioPreallocateFileSize;
         this.suffix = suffix;
@@ -173,97 +377,412 @@ public class LogEventHandler implements EventHandler<ResizableCharBuffer> {
         this.encoding = encoding;
         this.directory = directory;
         this.log = log;
-        this.rotatable = rotatable;
+        this.rotatable = rotatable && fileOutput;
         this.renameOnRotate = renameOnRotate;
         this.syncWrite = syncWrite;
+        this.writerType = writerType;
+        this.mappedWindowSize = mappedWindowSize;
+        this.maxFlushLatencyMillis = maxFlushLatencyMillis;
+        this.compression = compression;
+        this.compressionLevel = compressionLevel;
+        this.compressionBlockSize = compressionBlockSize;
+        this.maxFileSize = maxFileSize;
+        this.rotationIntervalMillis = TimeUnit.MINUTES.toMillis(rotationIntervalMinutes);
+        this.sparsePreallocation = sparsePreallocation;
+        this.checkExists = checkExists && fileOutput;
         this.ioBuffer = new byte[ioWriteSize];
         fileDateFormatter = new FastDatePrinter(format,TimeZone.getDefault(), Locale.US);
-        dateStamp = fileDateFormatter.format(System.currentTimeMillis());
-        if (rotatable && renameOnRotate) {
+        dateStampGranularityMillis = granularityOf(format);
+        long now = System.currentTimeMillis();
+        dateStamp = formatDateStamp(now);
+        nextRotationCheck = nextRotationCheck(now);
+        if (this.rotatable && renameOnRotate) {
             restore();
         }
-        open();
+        if (fileOutput) {
+            open();
+        }
     }
 
     @Override
-    public void onEvent(ResizableCharBuffer event, long sequence, boolean endOfBatch) throws Exception {
-        event.append(lineEndings);
+    public void onEvent(AccessLogEvent event, long sequence, boolean endOfBatch) throws Exception {
+        if(fileCheckDue) {
+            fileCheckDue = false;
+            // the time the request was logged serves as the clock, saving a system call
+            checkFile(event.getLogDate());
+        }
 
-        CharBuffer flippedBuffer = event.getCharBuffer();
-        flippedBuffer.mark();
-        ByteBuffer encodedBuffer;
+        ByteBuffer line;
+        byte[] bytes;
+        int size;
+        if(recordEncoder==null && (line = event.getOffHeapLine())!=null) {
+            // already utf-8, with its line ending
+            appendToGathered(line);
+            bytes = null;
+            size = 0;
+        } else if(recordEncoder!=null) {
+            record.reset();
+            recordEncoder.encode(event,record);
+            bytes = record.getBuf();
+            size = record.size();
+        } else {
+            if(!event.isEncoded()) {
+                // a line that has been through the formatting stage's encoder has its line ending
+                event.append(lineEndingsBytes);
+            }
+
+            bytes = event.getBuf();
+            size = event.size();
+            if(encoder!=null && !event.isEncoded()) {
+                ByteBuffer encodedBuffer = encoder.encode(event);
+                if(encodedBuffer!=null) {
+                    bytes = encodedBuffer.array();
+                    size = encodedBuffer.limit();
+                } else {
+                    // write the line as utf-8
+                    encodeFailures.increment();
+                }
+            } else if(event.isEncodeFailed()) {
+                encodeFailures.increment();
+            }
+        }
+
+        if(bytes==null) {
+            // gathered
+        } else if(gatherHeapLines && bytes==event.getBuf() && (line = event.getHeapLine())!=null) {
+            appendToGathered(line);
+        } else {
+            appendToPage(bytes,size);
+        }
+        eventsWritten.increment();
+
+        long publishNanos = event.getPublishNanos();
+        if(publishNanos!=0) {
+            translateLatency.record(event.getTranslateNanos());
+            addPagePublishTime(publishNanos);
+        }
+
+        event.reset();
+
+        if(endOfBatch) {
+            onEndOfBatch();
+        }
+    }
+
+    private void addPagePublishTime(long publishNanos) {
+        if(pagePublishCount==pagePublishNanos.length) {
+            long[] bigger = new long[pagePublishNanos.length*2];
+            System.arraycopy(pagePublishNanos,0,bigger,0,pagePublishCount);
+            pagePublishNanos = bigger;
+        }
+        pagePublishNanos[pagePublishCount++] = publishNanos;
+    }
+
+    private void recordPagePublishTimes(long writtenNanos) {
+        for(int i=0;i<pagePublishCount;i++) {
+            publishToWriteLatency.record(writtenNanos - pagePublishNanos[i]);
+        }
+        pagePublishCount = 0;
+    }
+
+    /**
+     * Copies the given bytes into the page, writing the page to the file
+     * each time it fills.
+     */
+    private void appendToPage(byte[] bytes, int size) {
+        if(gatheredCount>0) {
+            // the gathered lines come first
+            writeGathered();
+        }
+        if(!fileOutput && currentPosition>0 && size<=ioWriteSize && currentPosition+size>ioWriteSize) {
+            // a sink is sent whole lines where it can be
+            flush();
+        }
+        int offset = 0;
+        while (offset < size) {
+            int toCopy = Math.min(ioWriteSize - currentPosition, size - offset);
+            System.arraycopy(bytes,offset,ioBuffer,currentPosition,toCopy);
+            currentPosition+=toCopy;
+            offset+=toCopy;
+
+            if (currentPosition==ioWriteSize) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Adds the given off heap line to those to be written with one gathering write;
+     * writing them if the max number of lines has been gathered.
+     */
+    private void appendToGathered(ByteBuffer line) {
+        if(currentPosition>0) {
+            // the lines in the page come first
+            flush();
+        }
+        gathered[gatheredCount++] = line;
+        gatheredBytes += line.remaining();
+        if(gatheredCount==gathered.length) {
+            writeGathered();
+        }
+    }
+
+    /**
+     * Writes the gathered off heap lines to the log file
+     */
+    private void writeGathered() {
         try {
-            encodedBuffer = encoder.encode(flippedBuffer);
-        } catch (Exception e) {
-            log(event.toString());
-            event.reset();
-            return;
+            if (isOpen()) {
+                long start = System.nanoTime();
+                sink.write(gathered,0,gatheredCount);
+                writeNanos.add(System.nanoTime() - start);
+                bytesWritten.add(gatheredBytes);
+            }
+            gatheringWrites.increment();
+        } catch (IOException e) {
+            log.error("Unable to log to " + describeOutput(), e);
+        } finally {
+            if(pagePublishCount>0) {
+                recordPagePublishTimes(System.nanoTime());
+            }
+            Arrays.fill(gathered,0,gatheredCount,null);
+            gatheredCount = 0;
+            gatheredBytes = 0;
+            fileCheckDue = true;
         }
+    }
 
+    /**
+     * At the end of a batch the partially filled page is written, if it has been
+     * waiting to be written for at least the max flush latency.
+     */
+    private void onEndOfBatch() {
+        if(overflowHandler!=null) {
+            writeOverflowSummary(false);
+        }
 
-        int size = encodedBuffer.limit();
-        int remainingSize = (ioWriteSizeMinusOne - currentPosition);
-        if (remainingSize >= size) {
-            System.arraycopy(encodedBuffer.array(),0,ioBuffer,currentPosition,size);
-            currentPosition+=size;
-        } else {
-            byte[] bytes = encodedBuffer.array();
-            int offset = 0;
-            do {
+        if(gatheredCount>0) {
+            // the slots are about to be freed
+            writeGathered();
+        }
 
-                System.arraycopy(bytes,offset,ioBuffer,currentPosition,remainingSize);
-                currentPosition+=remainingSize;
-                offset += remainingSize;
+        if(flushRequested) {
+            flushRequested = false;
+            flushPartialPage();
+        }
+        else if(currentPosition>0) {
+            long now = currentTimeMillis();
+            if(unflushedSince==0) {
+                unflushedSince = now;
+            }
+            if(now - unflushedSince >= maxFlushLatencyMillis) {
+                flushPartialPage();
+            }
+        }
+    }
 
-                if (currentPosition==ioWriteSizeMinusOne) {
-                    try {
-                        log(ioBuffer);
-                    } catch (IOException e) {
-                        log.info("Unable to log to file:" + currentLogFile);
-                    }
-                }
+    /**
+     * Called by the event processor when no events have arrived within
+     * the wait strategy's timeout. Whatever is in the page is written.
+     */
+    @Override
+    public void onTimeout(long sequence) throws Exception {
+        if(overflowHandler!=null) {
+            writeOverflowSummary(false);
+        }
+        flushRequested = false;
+        flushPartialPage();
+        if(checkExists) {
+            checkExternalRotation();
+        }
+    }
 
-                remainingSize = Math.min(ioWriteSize, size - offset);
-            } while (offset != size);
+    /**
+     * Writes the partially filled page, and has the writer write anything
+     * it is holding on to.
+     */
+    private void flushPartialPage() {
+        flush();
+        if(isOpen()) {
+            try {
+                sink.flush();
+            } catch (IOException e) {
+                log.error("Unable to log to " + describeOutput(), e);
+            }
+        }
+    }
 
+    /**
+     * Have a summary line written to the log, at most every <code>summaryIntervalMillis</code>, of the
+     * number of log messages the given overflow handler has dealt with since the last summary line.
+     * Must be called before events are processed.
+     */
+    public void setOverflowSummary(OverflowHandler overflowHandler, long summaryIntervalMillis) {
+        this.overflowHandler = overflowHandler;
+        this.overflowSummaryIntervalMillis = summaryIntervalMillis;
+    }
 
+    private void writeOverflowSummary(boolean ignoreInterval) {
+        long overflowed = overflowHandler.getOverflowCount();
+        if(overflowed==overflowsReported) {
+            return;
         }
 
+        long now = currentTimeMillis();
+        if(ignoreInterval || now - lastOverflowSummary >= overflowSummaryIntervalMillis) {
+            String summary = OVERFLOW_SUMMARY_PREFIX + (overflowed - overflowsReported) +
+                    OVERFLOW_SUMMARY_SUFFIX;
+            if(recordEncoder!=null) {
+                record.reset();
+                recordEncoder.encodeComment(summary,record);
+                appendToPage(record.getBuf(),record.size());
+            } else {
+                byte[] bytes = summary.getBytes(UTF8);
+                appendToPage(bytes,bytes.length);
+                appendToPage(lineEndingsBytes,lineEndingsBytes.length);
+            }
+            overflowsReported = overflowed;
+            lastOverflowSummary = now;
+        }
+    }
 
+    /**
+     * Write the lines in the ring buffer slots' heap buffers with a gathering write, as
+     * is done for lines in off heap slots, rather than copying them into the page.  Lines
+     * that have been transcoded, or are in a buffer borrowed from the overflow arena, are
+     * still copied.  Only for ring buffers that free their slots at the end of each batch.
+     * Must be called before events are processed.
+     *
+     * @param gatherHeapLines whether the lines in heap buffers are gathered
+     * @param maxGatheredLines the max number of lines written with one gathering write
+     */
+    public void setGatheringWrites(boolean gatherHeapLines, int maxGatheredLines) {
+        this.gatherHeapLines = gatherHeapLines;
+        this.gathered = new ByteBuffer[Math.max(1, maxGatheredLines)];
+    }
 
+    /**
+     * Read the time from the given coarse clock, rather than the system clock.
+     * Must be called before events are processed.
+     */
+    public void setClock(CachedClock clock) {
+        this.clock = clock;
+    }
 
-        event.reset();
+    private long currentTimeMillis() {
+        return clock == null ? System.currentTimeMillis() : clock.currentTimeMillis();
     }
 
-    private void checkFile() {
-        rotate();
+    /**
+     * Have log files compressed once they have been rotated, by the given compressor.
+     * Files that are compressed as they are written are not.  Must be called before
+     * events are processed.
+     */
+    public void setRotatedFileCompressor(RotatedFileCompressor rotatedFileCompressor) {
+        this.rotatedFileCompressor = rotatedFileCompressor;
+    }
 
-        /* In case something external rotated the file instead */
-        if (checkExists) {
-            if (currentLogFile != null && !currentLogFile.exists()) {
-                try {
-                    close(false);
-                } catch (Throwable e) {
-                    ExceptionUtils.handleThrowable(e);
-                    log.info(sm.getString("accessLogValve.closeFail"), e);
-                }
+    /**
+     * Write the log messages as binary records, encoded by the given encoder, rather
+     * than as lines of text.  Must be called before events are processed.
+     */
+    public void setBinaryFormat(BinaryRecordEncoder recordEncoder) {
+        this.recordEncoder = recordEncoder;
+        this.record = new ResizableByteBuffer(ioWriteSize);
+        if(isOpen()) {
+            startSegment();
+        }
+    }
+
+    private void startSegment() {
+        record.reset();
+        recordEncoder.startSegment(record);
+        appendToPage(record.getBuf(),record.size());
+    }
+
+    /**
+     * Request that the log file is checked, before the next log message is written, to see
+     * if something external has moved it.  Only done if <code>checkExists</code> is set.
+     * Can be called from any thread.
+     */
+    public void requestExternalRotationCheck() {
+        externalRotationCheckRequested = true;
+    }
 
-                    /* Make sure date is correct */
-                dateStamp = fileDateFormatter.format(
-                        new Date(System.currentTimeMillis()));
+    /**
+     * Request that the partially filled page is written at the end of the current
+     * (or next) batch.  Can be called from any thread.
+     */
+    public void requestFlush() {
+        flushRequested = true;
+    }
 
-                open();
+    /**
+     * Writes whatever log lines are in the page, or gathered, to the log file.
+     */
+    public void flush() {
+        if(gatheredCount>0) {
+            writeGathered();
+        }
+        if(currentPosition==0) {
+            return;
+        }
+        try {
+            log(ioBuffer,currentPosition);
+            pagesFlushed.increment();
+        } catch (IOException e) {
+            log.error("Unable to log to " + describeOutput(), e);
+        } finally {
+            if(pagePublishCount>0) {
+                recordPagePublishTimes(System.nanoTime());
             }
+            currentPosition = 0;
+            unflushedSince = 0;
+            fileCheckDue = true;
         }
+    }
+
+    private void checkFile(long now) {
+        rotate(now);
+
+        if (checkExists && externalRotationCheckRequested) {
+            checkExternalRotation();
+        }
+    }
+
+    /**
+     * In case something external rotated the file instead; the file is reopened if it no
+     * longer exists, or is shorter than what has been written to it (it has been replaced
+     * or truncated).
+     */
+    private void checkExternalRotation() {
+        externalRotationCheckRequested = false;
+        if (currentLogFile != null && writer != null &&
+                (!currentLogFile.exists() || currentLogFile.length() < writer.position())) {
+            try {
+                close(false);
+            } catch (Throwable e) {
+                ExceptionUtils.handleThrowable(e);
+                log.info(sm.getString("accessLogValve.closeFail"), e);
+            }
+
+                /* Make sure date is correct */
+            long now = System.currentTimeMillis();
+            dateStamp = formatDateStamp(now);
+            nextRotationCheck = nextRotationCheck(now);
 
+            open();
+            rotations.increment();
+        }
     }
 
-    public void log(byte[] message) throws IOException {
-//        message.flip();
-        checkFile();
-        writer.write(message);
-        currentPosition=0;
-//        message.clear();
+    public void log(byte[] message, int length) throws IOException {
+        if (isOpen()) {
+            long start = System.nanoTime();
+            sink.write(message,0,length);
+            writeNanos.add(System.nanoTime() - start);
+            bytesWritten.add(length);
+        }
     }
 
     /**
@@ -274,45 +793,177 @@ public class LogEventHandler implements EventHandler<ResizableCharBuffer> {
      */
     public void log(String message) {
 
-        checkFile();
+        checkFile(System.currentTimeMillis());
 
         // Log this message
-        if (writer != null)
+        if (isOpen())
         {
             try {
-                try {
-                    writer.write(message.getBytes("UTF-8"));
-                } catch(UnsupportedEncodingException e) {
-                    writer.write(message.getBytes());
-                }
+                byte[] bytes = message.getBytes(UTF8);
+                sink.write(bytes,0,bytes.length);
             } catch(IOException e) {
-                log.error("Unable to log to file:" + currentLogFile);
+                log.error("Unable to log to " + describeOutput());
             }
 
         }
     }
 
+    /**
+     * Whether there is a log file open, or a sink, to write to
+     */
+    private boolean isOpen() {
+        return writer != null || !fileOutput;
+    }
+
+    private String describeOutput() {
+        return fileOutput ? "file:" + currentLogFile : sink.toString();
+    }
+
+    /**
+     * The log file as a sink, the writer of the current log file
+     */
+    private class FileSink implements AccessLogSink {
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            writer.write(bytes,offset,length);
+        }
+
+        @Override
+        public void write(ByteBuffer[] buffers, int offset, int length) throws IOException {
+            writer.write(buffers,offset,length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public long getBytesDropped() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+            LogEventHandler.this.close(false);
+        }
+
+        @Override
+        public String toString() {
+            return "file:" + currentLogFile;
+        }
+    }
+
     /**
      * Rotate the log file if necessary.
      */
     public void rotate() {
+        rotate(System.currentTimeMillis());
+    }
+
+    private void rotate(long now) {
         if (rotatable) {
-            // Only do a logfile switch check once a second, max.
-            long systime = System.currentTimeMillis();
-            if ((systime - rotationLastChecked) > 1000) {
-                rotationLastChecked = systime;
-                String tsDate;
-                // Check for a change of date
-                tsDate = fileDateFormatter.format(rotationLastChecked);
+            // The date stamp can only change once the next rotation boundary is reached
+            if (now >= nextRotationCheck) {
+                String tsDate = formatDateStamp(now);
+                nextRotationCheck = nextRotationCheck(now);
 
                 // If the date has changed, switch log files
                 if (!dateStamp.equals(tsDate)) {
-                    close(true);
-                    dateStamp = tsDate;
-                    open();
+                    switchFile(tsDate, false);
+                    return;
+                }
+            }
+
+            if (maxFileSize > 0 && writer != null && writer.position() >= maxFileSize) {
+                switchFile(dateStamp, true);
+            }
+        }
+    }
+
+    /**
+     * Closes the current log file, and opens the next one
+     *
+     * @param newDateStamp the date stamp of the next file
+     * @param sizeLimited if true the next file is the next in sequence for the date stamp
+     */
+    private void switchFile(String newDateStamp, boolean sizeLimited) {
+        File rotatedLogFile = close(true);
+        if (rotatedLogFile != null && rotatedFileCompressor != null &&
+                compression == LogFileWriter.COMPRESSION_TYPE.NONE) {
+            rotatedFileCompressor.compress(rotatedLogFile);
+        }
+        dateStamp = newDateStamp;
+        if (sizeLimited) {
+            // skip over any files (or their compressed equivalent) from a previous run
+            File next;
+            do {
+                fileSequence++;
+                next = getLogFile(true);
+            } while (next.exists() || new File(next.getPath() + ".gz").exists());
+        } else {
+            fileSequence = 0;
+        }
+        open();
+        rotations.increment();
+    }
+
+    /**
+     * The date stamp for the log file at the given time; the start of the rotation
+     * interval if there is one.
+     */
+    private String formatDateStamp(long time) {
+        if (rotationIntervalMillis > 0) {
+            long localTime = time + TimeZone.getDefault().getOffset(time);
+            time -= localTime % rotationIntervalMillis;
+        }
+        return fileDateFormatter.format(time);
+    }
+
+    /**
+     * The start of the rotation interval, or date stamp granularity, following the given
+     * time (in the default time zone).
+     */
+    private long nextRotationCheck(long time) {
+        long period = rotationIntervalMillis > 0 ? rotationIntervalMillis : dateStampGranularityMillis;
+        long localTime = time + TimeZone.getDefault().getOffset(time);
+        return time - localTime % period + period;
+    }
+
+    /**
+     * The millis between changes of the finest field in the given date format, ignoring
+     * quoted text.  Anything coarser than an hour changes at most once a day.
+     */
+    public static long granularityOf(String format) {
+        long granularity = TimeUnit.DAYS.toMillis(1);
+        boolean quoted = false;
+        for (int i = 0; i < format.length(); i++) {
+            char c = format.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted) {
+                switch (c) {
+                    case 'S':
+                        granularity = Math.min(granularity, 1);
+                        break;
+                    case 's':
+                        granularity = Math.min(granularity, TimeUnit.SECONDS.toMillis(1));
+                        break;
+                    case 'm':
+                        granularity = Math.min(granularity, TimeUnit.MINUTES.toMillis(1));
+                        break;
+                    case 'H':
+                    case 'h':
+                    case 'k':
+                    case 'K':
+                    case 'a':
+                        granularity = Math.min(granularity, TimeUnit.HOURS.toMillis(1));
+                        break;
                 }
             }
         }
+        return granularity;
     }
 
     /**
@@ -344,27 +995,20 @@ public class LogEventHandler implements EventHandler<ResizableCharBuffer> {
             // preallocate the file to stop expansion during writes
             boolean preallocated = false;
             if(!pathname.exists() && ioPreallocateFileSize>0) {
-                preallocated = true;
-                preallocate(pathname);
-            }
-
-            if(syncWrite) {
-                writer = new RandomAccessFile(pathname, "rwd");
-            } else {
-                writer = new RandomAccessFile(pathname, "rw");
-            }
-
-            if(!preallocated) {
-                // set to append to the file
-                writer.skipBytes( (int)writer.length() );
-
-                // start on a new line
-                writer.write(lineEndingsBytes);
-                writer.getFD().sync();
+                if(preallocator==null) {
+                    preallocated = true;
+                    preallocate(pathname);
+                } else {
+                    preallocated = useSpareFile(pathname);
+                }
             }
 
-            writerChannel = writer.getChannel();
+            writer = createWriter(pathname,preallocated);
             currentLogFile = pathname;
+            if(recordEncoder!=null) {
+                startSegment();
+            }
+            prepareSpareFile();
         } catch (IOException e) {
             writer = null;
             currentLogFile = null;
@@ -372,20 +1016,77 @@ public class LogEventHandler implements EventHandler<ResizableCharBuffer> {
         }
     }
 
+    private LogFileWriter createWriter(File pathname, boolean preallocated) throws IOException {
+        if (compression == LogFileWriter.COMPRESSION_TYPE.GZIP) {
+            // nothing can come between the gzip members of the file
+            LogFileWriter writer = createFileWriter(pathname,preallocated,NO_LINE_ENDING);
+            try {
+                return new CompressingLogFileWriter(writer,pathname,compressionLevel,compressionBlockSize);
+            } catch (IOException e) {
+                writer.close();
+                throw e;
+            }
+        }
+        return createFileWriter(pathname,preallocated,lineEndingsBytes);
+    }
+
+    private LogFileWriter createFileWriter(File pathname, boolean preallocated, byte[] lineEnding) throws IOException {
+        switch (writerType) {
+            case MEMORY_MAPPED:
+                return new MappedLogFileWriter(pathname,syncWrite,preallocated,lineEnding,mappedWindowSize);
+            default:
+                return new RandomAccessLogFileWriter(pathname,syncWrite,preallocated,lineEnding);
+        }
+    }
+
     private void preallocate(final File pathname)
             throws IOException
     {
-
         // do not preallocate it already exists, otherwise, the file will be overwritten
-        RandomAccessFile file = new RandomAccessFile(pathname, "rw");
+        FilePreallocator.preallocate(pathname,ioPreallocateFileSize,BLANK_PAGE,sparsePreallocation);
+    }
 
-        for (long i = 0; i < ioPreallocateFileSize; i+= ioWriteSize)
-        {
-            file.write(BLANK_PAGE, 0, ioWriteSize);
+    /**
+     * Have the next log file preallocated, in the background, by the given preallocator.
+     * Must be called before events are processed.
+     */
+    public void setPreallocator(FilePreallocator preallocator) {
+        this.preallocator = preallocator;
+        prepareSpareFile();
+    }
+
+    /**
+     * Has the spare preallocated, if another log file can be opened: on rotation, or on
+     * reopening a file rotated by something else.  Otherwise the spare would never be used.
+     */
+    private void prepareSpareFile() {
+        if(fileOutput && (rotatable || checkExists) && preallocator!=null && spareFile==null && ioPreallocateFileSize>0) {
+            File spare = new File(getLogDirectory(), "." + prefix + SPARE_FILE_NAME + suffix);
+            spareFile = preallocator.preallocate(spare,ioPreallocateFileSize,ioWriteSize,sparsePreallocation);
         }
+    }
 
-        file.getFD().sync();
-        file.close();
+    /**
+     * Renames the spare preallocated file to the given log file, if the spare is ready
+     *
+     * @return true if the log file is the preallocated spare
+     */
+    private boolean useSpareFile(File pathname) {
+        Future<File> spare = spareFile;
+        if(spare==null || !spare.isDone()) {
+            return false;
+        }
+        spareFile = null;
+        try {
+            return spare.get().renameTo(pathname);
+        } catch (ExecutionException e) {
+            log.warn("Unable to preallocate the next access log file", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (CancellationException e) {
+            // stopping
+        }
+        return false;
     }
 
 
@@ -426,15 +1127,12 @@ public class LogEventHandler implements EventHandler<ResizableCharBuffer> {
 
 
     /**
-     * Create a File object based on the current log file name.
-     * Directories are created as needed but the underlying file
-     * is not created or opened.
+     * Returns the directory log files are written to, creating it if necessary.
+     * A relative directory is relative to catalina.base
      *
-     * @param useDateStamp include the timestamp in the file name.
-     * @return the log file object
+     * @return the log directory
      */
-    private File getLogFile(boolean useDateStamp) {
-
+    public File getLogDirectory() {
         // Create the directory if necessary
         File dir = new File(directory);
         if (!dir.isAbsolute()) {
@@ -443,12 +1141,26 @@ public class LogEventHandler implements EventHandler<ResizableCharBuffer> {
         if (!dir.mkdirs() && !dir.isDirectory()) {
             log.error(sm.getString("accessLogValve.openDirFail", dir));
         }
+        return dir;
+    }
+
+    /**
+     * Create a File object based on the current log file name.
+     * Directories are created as needed but the underlying file
+     * is not created or opened.
+     *
+     * @param useDateStamp include the timestamp in the file name.
+     * @return the log file object
+     */
+    private File getLogFile(boolean useDateStamp) {
+
+        File dir = getLogDirectory();
 
         // Calculate the current log file name
         File pathname;
         if (useDateStamp) {
             pathname = new File(dir.getAbsoluteFile(), prefix + dateStamp
-                    + suffix);
+                    + (fileSequence > 0 ? "." + fileSequence : "") + suffix);
         } else {
             pathname = new File(dir.getAbsoluteFile(), prefix + suffix);
         }
@@ -472,6 +1184,8 @@ public class LogEventHandler implements EventHandler<ResizableCharBuffer> {
             try {
                 if (!rotatedLogFile.renameTo(newLogFile)) {
                     log.error(sm.getString("accessLogValve.renameFail", rotatedLogFile, newLogFile));
+                } else {
+                    renameIndex(rotatedLogFile, newLogFile);
                 }
             } catch (Throwable e) {
                 ExceptionUtils.handleThrowable(e);
@@ -481,20 +1195,36 @@ public class LogEventHandler implements EventHandler<ResizableCharBuffer> {
     }
 
 
+    /**
+     * Moves the frame index of a compressed log file along with the log file
+     */
+    private void renameIndex(File logFile, File newLogFile) {
+        File index = CompressingLogFileWriter.indexFileFor(logFile);
+        if (compression != LogFileWriter.COMPRESSION_TYPE.NONE && index.exists()) {
+            File newIndex = CompressingLogFileWriter.indexFileFor(newLogFile);
+            if (!index.renameTo(newIndex)) {
+                log.error(sm.getString("accessLogValve.renameFail", index, newIndex));
+            }
+        }
+    }
+
     /**
      * Close the currently open log file (if any)
      *
      * @param rename Rename file to final name after closing
+     * @return the file closed, under its final name; null if there was no file open
      */
-    private void close(boolean rename) {
+    private File close(boolean rename) {
         if (writer == null) {
-            return;
+            return null;
         }
+        File closedLogFile = currentLogFile;
+        // the page belongs to this file
+        flush();
         try {
             writer.close();
-            writerChannel.close();
         } catch(IOException e) {
-
+            log.error(sm.getString("accessLogValve.closeFail"), e);
         }
         if (rename && renameOnRotate) {
             File newLogFile = getLogFile(true);
@@ -502,6 +1232,9 @@ public class LogEventHandler implements EventHandler<ResizableCharBuffer> {
                 try {
                     if (!currentLogFile.renameTo(newLogFile)) {
                         log.error(sm.getString("accessLogValve.renameFail", currentLogFile, newLogFile));
+                    } else {
+                        renameIndex(currentLogFile, newLogFile);
+                        closedLogFile = newLogFile;
                     }
                 } catch (Throwable e) {
                     ExceptionUtils.handleThrowable(e);
@@ -514,10 +1247,98 @@ public class LogEventHandler implements EventHandler<ResizableCharBuffer> {
         writer = null;
         dateStamp = "";
         currentLogFile = null;
+        return closedLogFile;
     }
 
+    /**
+     * The number of log lines that have been copied into the page
+     */
+    public long getEventsWritten() {
+        return eventsWritten.get();
+    }
+
+    /**
+     * The number of bytes written to the log file
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * The number of log lines that could not be encoded in the configured
+     * encoding, and were written as UTF-8
+     */
+    public long getEncodeFailures() {
+        return encodeFailures.get();
+    }
+
+    public long getPagesFlushed() {
+        return pagesFlushed.get();
+    }
+
+    /**
+     * The number of gathering writes of lines straight from the ring buffer slots
+     */
+    public long getGatheringWrites() {
+        return gatheringWrites.get();
+    }
+
+    /**
+     * The number of times a new log file has been opened, due to the date changing
+     * or the log file being moved by something else.
+     */
+    public long getRotations() {
+        return rotations.get();
+    }
+
+    /**
+     * The total time spent writing to the log file
+     */
+    public long getWriteNanos() {
+        return writeNanos.get();
+    }
+
+    /**
+     * Latency, in nanos, from a log line being published to the ring buffer, to the
+     * page containing the line being written to the file.  Only lines published with
+     * latency recording enabled are counted.
+     */
+    public LatencyHistogram getPublishToWriteLatency() {
+        return publishToWriteLatency;
+    }
+
+    /**
+     * Time, in nanos, taken to render the log lines on the request threads
+     */
+    public LatencyHistogram getTranslateLatency() {
+        return translateLatency;
+    }
+
+    /**
+     * Writes any log lines waiting in the page, and closes the log file.
+     * Must only be called once the thread processing events has stopped.
+     */
     public void shutdown() {
-        close(false);
+        if(overflowHandler!=null) {
+            writeOverflowSummary(true);
+        }
+        flush();
+        if (fileOutput) {
+            close(false);
+        } else {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                log.error(sm.getString("accessLogValve.closeFail"), e);
+            }
+        }
+    }
+
+    /**
+     * Where the log lines are written
+     */
+    public AccessLogSink getSink() {
+        return sink;
     }
 
 }
@@ -0,0 +1,51 @@
+package org.greencheek.logging.disruptor.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes the pages of log lines to the currently open log file.
+ * Not thread safe, it is only used by the single thread that is consuming
+ * log messages from the ring buffer.
+ */
+public interface LogFileWriter {
+
+    public enum WRITER_TYPE {
+        RANDOM_ACCESS_FILE,
+        MEMORY_MAPPED
+    }
+
+    public enum COMPRESSION_TYPE {
+        NONE,
+        GZIP
+    }
+
+    /**
+     * Write the given bytes at the current position in the file
+     */
+    public void write(byte[] bytes, int offset, int length) throws IOException;
+
+    /**
+     * Write what remains of each of the given buffers, one after the other, at the current
+     * position in the file.  The position of each buffer is moved on by what is written.
+     */
+    public void write(ByteBuffer[] buffers, int offset, int length) throws IOException;
+
+    /**
+     * Called when a partially filled page has been written, as the log is quiet or the
+     * page has been held for the max flush latency.  Writers that hold on to what has
+     * been written, write it.
+     */
+    public void flush() throws IOException;
+
+    /**
+     * The position in the file up to which log data has been written
+     */
+    public long position();
+
+    /**
+     * Close the file, truncating it to {@link #position()} so that any
+     * preallocated space that has not been written to is removed.
+     */
+    public void close() throws IOException;
+}
@@ -0,0 +1,142 @@
+package org.greencheek.logging.disruptor.io;
+
+import org.greencheek.util.MappedBuffers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes to the log file through a {@link MappedByteBuffer}.  A window of the file
+ * is mapped into memory and the log lines are copied straight into the mapping; there
+ * is no system call per page.  When the window is full the next region of the file
+ * is mapped.  Mapping past the end of the file extends the file, but it is intended
+ * that the file has been preallocated (so the mapped region already has its blocks
+ * allocated on disk).
+ *
+ * On close the file is truncated to the end of the data that has been written.
+ */
+public class MappedLogFileWriter implements LogFileWriter {
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int windowSize;
+    private final boolean syncWrite;
+
+    private MappedByteBuffer window;
+    private long position;
+
+    /**
+     *
+     * @param pathname The file to write to
+     * @param syncWrite if true, the mapped window is forced to disk after every write
+     * @param preallocated if true the file has been preallocated and writing starts from the beginning
+     *                     of the file, otherwise writing starts at the end of the file, on a new line.
+     * @param lineEnding the bytes that start a new line.
+     * @param windowSize the size of the region of the file that is mapped at any one time.
+     * @throws IOException
+     */
+    public MappedLogFileWriter(File pathname, boolean syncWrite, boolean preallocated,
+                               byte[] lineEnding, int windowSize) throws IOException {
+        this.file = new RandomAccessFile(pathname, "rw");
+        this.channel = file.getChannel();
+        this.windowSize = windowSize;
+        this.syncWrite = syncWrite;
+        try {
+            if(preallocated) {
+                position = 0;
+            } else {
+                position = channel.size();
+                if(lineEnding.length>0) {
+                    write(lineEnding,0,lineEnding.length);
+                }
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while(length>0) {
+            if(window==null || !window.hasRemaining()) {
+                remap();
+            }
+            int toWrite = Math.min(length,window.remaining());
+            window.put(bytes,offset,toWrite);
+            offset+=toWrite;
+            length-=toWrite;
+            position+=toWrite;
+        }
+
+        if(syncWrite) {
+            window.force();
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer[] buffers, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            ByteBuffer buffer = buffers[i];
+            while(buffer.hasRemaining()) {
+                if(window==null || !window.hasRemaining()) {
+                    remap();
+                }
+                int toWrite = Math.min(buffer.remaining(),window.remaining());
+                int limit = buffer.limit();
+                buffer.limit(buffer.position()+toWrite);
+                window.put(buffer);
+                buffer.limit(limit);
+                position+=toWrite;
+            }
+        }
+
+        if(syncWrite && window!=null) {
+            window.force();
+        }
+    }
+
+    /**
+     * Maps the next window of the file, starting at the current position
+     */
+    private void remap() throws IOException {
+        unmap();
+        window = channel.map(FileChannel.MapMode.READ_WRITE,position,windowSize);
+    }
+
+    private void unmap() {
+        if(window!=null) {
+            MappedByteBuffer old = window;
+            window = null;
+            MappedBuffers.unmap(old);
+        }
+    }
+
+    @Override
+    public void flush() {
+        // written straight to the file
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if(window!=null) {
+                window.force();
+            }
+            // the mapping must be released before the file is truncated
+            unmap();
+            channel.truncate(position);
+        } finally {
+            file.close();
+        }
+    }
+}
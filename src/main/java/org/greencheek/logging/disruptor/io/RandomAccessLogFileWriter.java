@@ -0,0 +1,96 @@
+package org.greencheek.logging.disruptor.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes to the log file with a {@link RandomAccessFile}, a write
+ * system call per page.  Buffers are written with the file's channel, a
+ * gathering write system call for the lot.
+ */
+public class RandomAccessLogFileWriter implements LogFileWriter {
+
+    private final RandomAccessFile writer;
+    private final FileChannel channel;
+    private long position;
+
+    /**
+     *
+     * @param pathname The file to write to
+     * @param syncWrite if true, every write is synchronously written to disk.
+     * @param preallocated if true the file has been preallocated and writing starts from the beginning
+     *                     of the file, otherwise writing starts at the end of the file, on a new line.
+     * @param lineEnding the bytes that start a new line.
+     * @throws IOException
+     */
+    public RandomAccessLogFileWriter(File pathname, boolean syncWrite,
+                                     boolean preallocated, byte[] lineEnding) throws IOException {
+        if(syncWrite) {
+            writer = new RandomAccessFile(pathname, "rwd");
+        } else {
+            writer = new RandomAccessFile(pathname, "rw");
+        }
+
+        if(!preallocated) {
+            try {
+                // set to append to the file
+                writer.seek(writer.length());
+
+                // start on a new line
+                writer.write(lineEnding);
+                writer.getFD().sync();
+            } catch (IOException e) {
+                writer.close();
+                throw e;
+            }
+        }
+        position = writer.getFilePointer();
+        channel = writer.getChannel();
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        writer.write(bytes,offset,length);
+        position+=length;
+    }
+
+    @Override
+    public void write(ByteBuffer[] buffers, int offset, int length) throws IOException {
+        long remaining = 0;
+        for (int i = offset; i < offset + length; i++) {
+            remaining += buffers[i].remaining();
+        }
+        while (remaining > 0) {
+            long written = channel.write(buffers,offset,length);
+            remaining -= written;
+            position += written;
+            // skip over the buffers written in full
+            while (length > 0 && !buffers[offset].hasRemaining()) {
+                offset++;
+                length--;
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        // written straight to the file
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.setLength(position);
+        } finally {
+            writer.close();
+        }
+    }
+}
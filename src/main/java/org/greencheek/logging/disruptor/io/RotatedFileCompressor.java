@@ -0,0 +1,188 @@
+package org.greencheek.logging.disruptor.io;
+
+import org.apache.juli.logging.Log;
+import org.greencheek.util.SingleWriterCounter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzips log files once they have been rotated, on a low priority background thread;
+ * replacing each file with its ".gz" equivalent.
+ *
+ * The files waiting to be compressed are held in a bounded queue; if the queue is
+ * full the file is left as it is.  The rate at which a file is read is capped, so
+ * that compressing the previous day's file does not compete for disk bandwidth with
+ * the writing (and preallocation) of the new one.
+ */
+public class RotatedFileCompressor implements Runnable {
+
+    private static final String COMPRESSED_SUFFIX = ".gz";
+    private static final String PARTIAL_SUFFIX = ".part";
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final BlockingQueue<File> queue;
+    private final long maxBytesPerSecond;
+    private final Log log;
+
+    private final SingleWriterCounter filesCompressed = new SingleWriterCounter();
+    private final SingleWriterCounter bytesRead = new SingleWriterCounter();
+
+    private volatile Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * @param queueSize the max number of files waiting to be compressed
+     * @param maxBytesPerSecond the max rate at which files are read, 0 for no limit
+     * @param log
+     */
+    public RotatedFileCompressor(int queueSize, long maxBytesPerSecond, Log log) {
+        this.queue = new ArrayBlockingQueue<File>(Math.max(1, queueSize));
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.log = log;
+    }
+
+    public void start() {
+        Thread compressor = new Thread(this, "AccessLogCompressor");
+        compressor.setDaemon(true);
+        compressor.setPriority(Thread.MIN_PRIORITY);
+        thread = compressor;
+        compressor.start();
+    }
+
+    /**
+     * Queues the given file to be compressed.  Can be called from any thread.
+     *
+     * @return false if the queue is full, or the compressor has been stopped
+     */
+    public boolean compress(File file) {
+        if (!running) {
+            return false;
+        }
+        if (!queue.offer(file)) {
+            log.warn("Not compressing rotated access log file " + file + ", the compression queue is full");
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                File file = queue.poll(1, TimeUnit.SECONDS);
+                if (file != null) {
+                    compressFile(file);
+                }
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        } finally {
+            if (!queue.isEmpty()) {
+                log.info(queue.size() + " rotated access log files were left uncompressed, on stop");
+            }
+        }
+    }
+
+    private void compressFile(File file) throws InterruptedException {
+        File compressed = new File(file.getPath() + COMPRESSED_SUFFIX);
+        if (!file.exists() || compressed.exists()) {
+            return;
+        }
+
+        File partial = new File(compressed.getPath() + PARTIAL_SUFFIX);
+        boolean complete = false;
+        try {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                GZIPOutputStream out = new GZIPOutputStream(new FileOutputStream(partial), CHUNK_SIZE);
+                try {
+                    copy(in, out);
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+            complete = true;
+        } catch (InterruptedIOException e) {
+            throw new InterruptedException();
+        } catch (IOException e) {
+            log.error("Unable to compress rotated access log file " + file, e);
+        } finally {
+            if (!complete) {
+                partial.delete();
+            }
+        }
+
+        if (complete) {
+            if (!partial.renameTo(compressed)) {
+                log.error("Unable to rename " + partial + " to " + compressed);
+                partial.delete();
+            } else if (!file.delete()) {
+                log.error("Unable to remove rotated access log file " + file + ", once compressed");
+            } else {
+                filesCompressed.increment();
+            }
+        }
+    }
+
+    /**
+     * Copies the file, sleeping as needed to keep to the max bytes per second
+     */
+    private void copy(FileInputStream in, GZIPOutputStream out) throws IOException {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        long start = System.nanoTime();
+        long copied = 0;
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            out.write(chunk, 0, read);
+            copied += read;
+            bytesRead.add(read);
+            if (maxBytesPerSecond > 0) {
+                long aheadNanos = (long) (copied * 1e9 / maxBytesPerSecond) - (System.nanoTime() - start);
+                if (aheadNanos > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(aheadNanos);
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                }
+            }
+            if (!running) {
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    public long getFilesCompressed() {
+        return filesCompressed.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public int getFilesPending() {
+        return queue.size();
+    }
+
+    /**
+     * Stops the compressor; the file being compressed is left as it was, as are the
+     * files waiting to be compressed.
+     */
+    public void shutdown() {
+        running = false;
+        Thread compressor = thread;
+        if (compressor != null) {
+            compressor.interrupt();
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package org.greencheek.logging.disruptor.io;
+
+import org.apache.juli.logging.Log;
+import org.greencheek.util.SingleWriterCounter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Streams the log lines to a (local) log agent over a non blocking {@link SocketChannel}.
+ * The lines are sent as they are, one after the other; or if a {@link SyslogFramer} is
+ * given, as RFC 5424 syslog messages framed by octet counting (RFC 6587), that is each
+ * message preceded by its length and a space.
+ *
+ * When the channel is connected, and has nothing waiting to be sent, the lines are
+ * written straight from the buffers given (a gathering write of the ring buffer slots).
+ * What the channel does not take is held in the backlog, which is sent as the channel
+ * takes more, at the next write or flush.  While the agent cannot be reached the lines
+ * are held in the backlog, once the backlog is full lines are dropped.  When sending
+ * fails, the backlog is dropped (part of a line in it may have been sent), so that the
+ * next connection starts with a whole line; and connecting is retried after a backoff
+ * that doubles, up to a max, with each failed attempt.
+ *
+ * The agent is never sent a line cut short and run together with the next.  Only whole
+ * buffers that have not been sent are dropped; if the rest of a line that has been partly
+ * sent (or held) cannot be held, the connection is closed instead, and what follows of
+ * the line is dropped.
+ */
+public abstract class SocketChannelSink implements AccessLogSink, SyslogFramer.MessageSender {
+
+    private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+
+    private final SyslogFramer framer;
+    private final ByteBuffer backlog;
+    private final long minBackoffMillis;
+    private final long maxBackoffMillis;
+    protected final Log log;
+
+    private SocketChannel channel;
+    private boolean connected = false;
+    private long backoffMillis;
+    private long nextConnectAttempt = 0;
+    private boolean failureLogged = false;
+
+    // raw lines: whether what has been sent or held ends part way through a line; and
+    // whether the rest of a line is being dropped, up to its line ending
+    private boolean midLine = false;
+    private boolean skipping = false;
+
+    private final ByteBuffer[] single = new ByteBuffer[1];
+    private int[] startPositions = new int[16];
+    private final byte[] lengthPrefix = new byte[11];
+
+    private final SingleWriterCounter bytesDropped = new SingleWriterCounter();
+    private final SingleWriterCounter connects = new SingleWriterCounter();
+
+    /**
+     * @param framer frames each line as a syslog message, null to send the lines as they are
+     * @param backlogSize the max number of bytes held while the channel cannot take them
+     * @param minBackoffMillis the time to wait before reconnecting, after the connection fails
+     * @param maxBackoffMillis the max time to wait between attempts to reconnect
+     * @param log
+     */
+    protected SocketChannelSink(SyslogFramer framer, int backlogSize,
+                                long minBackoffMillis, long maxBackoffMillis, Log log) {
+        this.framer = framer;
+        this.backlog = ByteBuffer.allocateDirect(backlogSize);
+        this.minBackoffMillis = Math.max(1, minBackoffMillis);
+        this.maxBackoffMillis = Math.max(this.minBackoffMillis, maxBackoffMillis);
+        this.backoffMillis = this.minBackoffMillis;
+        this.log = log;
+    }
+
+    /**
+     * Opens a non blocking channel, and starts connecting it to the agent
+     */
+    protected abstract SocketChannel connect() throws IOException;
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        single[0] = ByteBuffer.wrap(bytes, offset, length);
+        try {
+            write(single, 0, 1);
+        } finally {
+            single[0] = null;
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer[] buffers, int offset, int length) throws IOException {
+        if (framer != null) {
+            framer.setTime(System.currentTimeMillis());
+            for (int i = offset; i < offset + length; i++) {
+                framer.frame(buffers[i], this);
+            }
+            sendBacklog();
+            return;
+        }
+
+        boolean sent = false;
+        boolean failed = false;
+        if (backlog.position() == 0 && !skipping && isConnected()) {
+            if (startPositions.length < length) {
+                startPositions = new int[length];
+            }
+            for (int i = 0; i < length; i++) {
+                startPositions[i] = buffers[offset + i].position();
+            }
+            sent = true;
+            try {
+                channel.write(buffers, offset, length);
+            } catch (IOException e) {
+                failed = true;
+                lineLost();
+                disconnected(e);
+            }
+        }
+        for (int i = offset; i < offset + length; i++) {
+            ByteBuffer buffer = buffers[i];
+            boolean written = sent && buffer.position() != startPositions[i - offset];
+            if (skipping) {
+                skipToLineEnd(buffer);
+            }
+            if (!buffer.hasRemaining()) {
+                if (written && !failed) {
+                    midLine = !endsWithLineEnd(buffer);
+                }
+            } else if (written) {
+                // part of the buffer has been sent
+                if (failed) {
+                    // the connection is gone, the rest of the line is of no use
+                    drop(buffer);
+                } else if (hold(buffer)) {
+                    midLine = !endsWithLineEnd(buffer);
+                } else {
+                    abandonLine("No room in the backlog for the rest of a line partly sent to " + this);
+                    drop(buffer);
+                }
+            } else if (hold(buffer)) {
+                midLine = !endsWithLineEnd(buffer);
+            } else {
+                if (midLine) {
+                    abandonLine("No room in the backlog for the rest of a line held for " + this);
+                }
+                drop(buffer);
+            }
+        }
+        sendBacklog();
+    }
+
+    private static boolean endsWithLineEnd(ByteBuffer buffer) {
+        return buffer.limit() > 0 && buffer.get(buffer.limit() - 1) == '\n';
+    }
+
+    /**
+     * Drops what remains of a buffer that has not been sent; along with the rest of the
+     * line it ends part way through, if it does
+     */
+    private void drop(ByteBuffer buffer) {
+        bytesDropped.add(buffer.remaining());
+        skipping = !endsWithLineEnd(buffer);
+        buffer.position(buffer.limit());
+    }
+
+    /**
+     * Drops the bytes of the buffer up to, and including, the line ending of the
+     * line being dropped
+     */
+    private void skipToLineEnd(ByteBuffer buffer) {
+        int start = buffer.position();
+        while (skipping && buffer.hasRemaining()) {
+            if (buffer.get() == '\n') {
+                skipping = false;
+            }
+        }
+        bytesDropped.add(buffer.position() - start);
+    }
+
+    /**
+     * The start of the line being sent has been lost with the connection; the next
+     * connection starts with the line after
+     */
+    private void lineLost() {
+        if (midLine) {
+            midLine = false;
+            skipping = true;
+        }
+    }
+
+    /**
+     * Gives up on the line part way through being sent: the backlog is dropped, and
+     * the connection closed, so that the agent does not see the start of the line run
+     * together with the next.  The rest of the line is dropped as it arrives.
+     */
+    private void abandonLine(String reason) {
+        bytesDropped.add(backlog.position());
+        backlog.clear();
+        if (channel != null) {
+            disconnected(new IOException(reason));
+        }
+        midLine = false;
+        skipping = true;
+    }
+
+    /**
+     * Sends a syslog message, preceded by its length
+     */
+    @Override
+    public void send(byte[] message, int length) {
+        int prefixStart = lengthPrefix.length - 1;
+        lengthPrefix[prefixStart] = ' ';
+        int remaining = length;
+        do {
+            lengthPrefix[--prefixStart] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining > 0);
+        int prefixLength = lengthPrefix.length - prefixStart;
+
+        if (backlog.remaining() < prefixLength + length) {
+            sendBacklog();
+            if (backlog.remaining() < prefixLength + length) {
+                bytesDropped.add(length);
+                return;
+            }
+        }
+        backlog.put(lengthPrefix, prefixStart, prefixLength);
+        backlog.put(message, 0, length);
+    }
+
+    /**
+     * Adds what remains of the given buffer to the backlog
+     *
+     * @return false if there is no room for it
+     */
+    private boolean hold(ByteBuffer buffer) {
+        if (!buffer.hasRemaining()) {
+            return true;
+        }
+        if (buffer.remaining() > backlog.remaining()) {
+            return false;
+        }
+        backlog.put(buffer);
+        return true;
+    }
+
+    /**
+     * Sends as much of the backlog as the channel takes
+     */
+    private void sendBacklog() {
+        if (backlog.position() == 0 || !isConnected()) {
+            return;
+        }
+        backlog.flip();
+        try {
+            channel.write(backlog);
+            backlog.compact();
+        } catch (IOException e) {
+            // part of a line may have been sent, the rest of the backlog follows on from it
+            bytesDropped.add(backlog.remaining());
+            backlog.clear();
+            lineLost();
+            disconnected(e);
+        }
+    }
+
+    /**
+     * Whether the channel is connected; connecting it, if a connection is not already
+     * being made and the backoff has passed.
+     */
+    private boolean isConnected() {
+        if (channel == null) {
+            if (System.currentTimeMillis() < nextConnectAttempt) {
+                return false;
+            }
+            try {
+                channel = connect();
+            } catch (IOException e) {
+                disconnected(e);
+                return false;
+            }
+        }
+        if (connected) {
+            return true;
+        }
+        try {
+            if (channel.finishConnect()) {
+                connected();
+                return true;
+            }
+        } catch (IOException e) {
+            disconnected(e);
+        }
+        return false;
+    }
+
+    private void connected() {
+        connected = true;
+        backoffMillis = minBackoffMillis;
+        connects.increment();
+        if (failureLogged) {
+            failureLogged = false;
+            log.info("Reconnected to " + this);
+        }
+    }
+
+    /**
+     * Closes the channel, and sets the time at which to next try to connect
+     */
+    private void disconnected(IOException e) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // already failed
+            }
+            channel = null;
+        }
+        connected = false;
+
+        nextConnectAttempt = System.currentTimeMillis() + backoffMillis;
+        if (!failureLogged) {
+            failureLogged = true;
+            log.warn("Unable to send access log messages to " + this + ", retrying in " + backoffMillis + "ms", e);
+        }
+        backoffMillis = Math.min(backoffMillis * 2, maxBackoffMillis);
+    }
+
+    @Override
+    public void flush() {
+        sendBacklog();
+    }
+
+    /**
+     * The number of times a connection has been made
+     */
+    public long getConnects() {
+        return connects.get();
+    }
+
+    @Override
+    public long getBytesDropped() {
+        return bytesDropped.get();
+    }
+
+    /**
+     * Sends what is left in the backlog, waiting for up to a second for the channel to
+     * take it, and closes the channel.
+     */
+    @Override
+    public void close() throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_TIMEOUT_MILLIS);
+        while (backlog.position() > 0 && channel != null && System.nanoTime() < deadline) {
+            sendBacklog();
+            if (backlog.position() > 0) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+        bytesDropped.add(backlog.position());
+        backlog.clear();
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.greencheek.logging.disruptor.io;
+
+import org.apache.juli.logging.Log;
+import org.greencheek.logging.disruptor.LogMessageEventTranslator;
+import org.greencheek.logging.disruptor.OverflowHandler;
+import org.greencheek.logging.domin.AccessLogEvent;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the log message that did not fit in the ring buffer, to a separate overflow
+ * file.  The log message is formatted on the calling (request) thread into a thread local
+ * buffer, and appended to the overflow file.  The overflow file is shared by all request
+ * threads, writes to it are serialized.
+ *
+ * The overflow file is not rotated.
+ */
+public class SpillingOverflowHandler implements OverflowHandler {
+
+    private static final ThreadLocal<AccessLogEvent> spillBuffer = new ThreadLocal<AccessLogEvent>() {
+        @Override
+        protected AccessLogEvent initialValue() {
+            return new AccessLogEvent(256);
+        }
+    };
+
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final File overflowFile;
+    private final Log log;
+    private final FileOutputStream outputStream;
+    private final FileChannel channel;
+
+    public SpillingOverflowHandler(File overflowFile, Log log) throws IOException {
+        this.overflowFile = overflowFile;
+        this.log = log;
+        File parent = overflowFile.getParentFile();
+        if (parent!=null && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Unable to create directory for overflow file:" + overflowFile);
+        }
+        this.outputStream = new FileOutputStream(overflowFile,true);
+        this.channel = outputStream.getChannel();
+    }
+
+    @Override
+    public void onOverflow(LogMessageEventTranslator translator) {
+        AccessLogEvent buffer = spillBuffer.get();
+        buffer.reset();
+        translator.renderTo(buffer);
+        buffer.append(LogEventHandler.lineEndingsBytes);
+
+        ByteBuffer bytes = buffer.getByteBuffer();
+        try {
+            synchronized (channel) {
+                while(bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+            spilled.incrementAndGet();
+        } catch (IOException e) {
+            if(failed.getAndIncrement()==0) {
+                log.error("Unable to write to access log overflow file:" + overflowFile, e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of log messages written to, or that could not be written to,
+     *         the overflow file.
+     */
+    @Override
+    public long getOverflowCount() {
+        return spilled.get() + failed.get();
+    }
+
+    /**
+     * @return the number of log messages that could not be written to the overflow file
+     */
+    @Override
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    @Override
+    public void shutdown() {
+        try {
+            synchronized (channel) {
+                outputStream.close();
+            }
+        } catch (IOException e) {
+            log.error("Unable to close access log overflow file:" + overflowFile, e);
+        }
+    }
+}
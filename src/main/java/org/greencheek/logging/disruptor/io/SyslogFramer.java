@@ -0,0 +1,183 @@
+package org.greencheek.logging.disruptor.io;
+
+import org.greencheek.logging.domin.ResizableByteBuffer;
+import org.greencheek.util.FastDatePrinter;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Splits the bytes written to a sink into lines, and frames each line as an RFC 5424
+ * syslog message:
+ * <pre>
+ * &lt;PRI&gt;1 TIMESTAMP HOSTNAME APP-NAME PROCID - - line
+ * </pre>
+ * The timestamp is the time the message is sent, in UTC to the millisecond.  A line
+ * that is split across writes is held until the rest of it arrives.  Messages longer
+ * than the max message size are truncated.
+ *
+ * Not thread safe.
+ */
+public class SyslogFramer {
+
+    /**
+     * Sends the syslog messages
+     */
+    public interface MessageSender {
+        /**
+         * @param message the message, only valid for the duration of the call
+         */
+        public void send(byte[] message, int length) throws IOException;
+    }
+
+    private static final String NIL_VALUE = "-";
+
+    private final FastDatePrinter timestampPrinter = new FastDatePrinter(
+            "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", TimeZone.getTimeZone("UTC"), Locale.US);
+    private final byte[] priority;
+    private final byte[] headerSuffix;
+    private final int maxMessageSize;
+
+    // the header up to the end of the structured data, for the time of the last message
+    private final ResizableByteBuffer header = new ResizableByteBuffer(128);
+    private long headerTime = Long.MIN_VALUE;
+    private long now;
+
+    // the start of a line split across writes
+    private final ResizableByteBuffer partial = new ResizableByteBuffer(256);
+    private final ResizableByteBuffer message = new ResizableByteBuffer(1024);
+    private byte[] chunk;
+
+    /**
+     * @param facility the syslog facility, 0 to 23 (16 is local0)
+     * @param severity the syslog severity, 0 to 7 (6 is informational)
+     * @param hostname the host name, null for the local host's name
+     * @param appName the name of the application
+     * @param maxMessageSize the max length of a message, header included
+     */
+    public SyslogFramer(int facility, int severity, String hostname, String appName, int maxMessageSize) {
+        int pri = (Math.max(0, Math.min(23, facility)) << 3) | Math.max(0, Math.min(7, severity));
+        this.priority = ("<" + pri + ">1 ").getBytes(ResizableByteBuffer.UTF8);
+        this.headerSuffix = (" " + headerField(hostname == null ? localHostName() : hostname, 255) +
+                " " + headerField(appName, 48) + " " + headerField(processId(), 128) +
+                " " + NIL_VALUE + " " + NIL_VALUE + " ").getBytes(ResizableByteBuffer.UTF8);
+        this.maxMessageSize = Math.max(maxMessageSize, priority.length + headerSuffix.length + 32);
+    }
+
+    /**
+     * A header field is printable ascii, with no spaces, of a max length
+     */
+    private static String headerField(String value, int maxLength) {
+        if (value == null || value.length() == 0) {
+            return NIL_VALUE;
+        }
+        StringBuilder field = new StringBuilder(Math.min(value.length(), maxLength));
+        for (int i = 0; i < value.length() && field.length() < maxLength; i++) {
+            char c = value.charAt(i);
+            field.append(c > 32 && c < 127 ? c : '_');
+        }
+        return field.toString();
+    }
+
+    private static String localHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            return NIL_VALUE;
+        }
+    }
+
+    private static String processId() {
+        // the name of the runtime is pid@hostname
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        int at = name.indexOf('@');
+        return at > 0 ? name.substring(0, at) : NIL_VALUE;
+    }
+
+    /**
+     * Sets the time at which the messages framed next are sent
+     */
+    public void setTime(long now) {
+        this.now = now;
+    }
+
+    /**
+     * Frames each line completed by the given bytes, handing the message to the sender
+     */
+    public void frame(byte[] bytes, int offset, int length, MessageSender sender) throws IOException {
+        int end = offset + length;
+        int lineStart = offset;
+        for (int i = offset; i < end; i++) {
+            if (bytes[i] == '\n') {
+                sendLine(bytes, lineStart, i, sender);
+                lineStart = i + 1;
+            }
+        }
+        // only as much of the line is held as can make it into the message
+        int toHold = Math.min(end - lineStart, maxMessageSize - partial.size());
+        if (toHold > 0) {
+            partial.putByteArrayByOffsetWithResize(bytes, lineStart, toHold);
+        }
+    }
+
+    /**
+     * Frames each line completed by what remains of the given buffer
+     */
+    public void frame(ByteBuffer buffer, MessageSender sender) throws IOException {
+        if (buffer.hasArray()) {
+            frame(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), sender);
+            buffer.position(buffer.limit());
+            return;
+        }
+        if (chunk == null) {
+            chunk = new byte[8192];
+        }
+        while (buffer.hasRemaining()) {
+            int length = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, length);
+            frame(chunk, 0, length, sender);
+        }
+    }
+
+    private void sendLine(byte[] bytes, int start, int end, MessageSender sender) throws IOException {
+        message.reset();
+        appendHeader();
+        int partialLength = partial.size();
+        if (partialLength > 0) {
+            // the start of the line came with an earlier write
+            if (start == end) {
+                partialLength = withoutCarriageReturn(partial.getBuf(), 0, partialLength);
+            }
+            appendTruncated(partial.getBuf(), 0, partialLength);
+            partial.reset();
+        }
+        appendTruncated(bytes, start, withoutCarriageReturn(bytes, start, end) - start);
+        sender.send(message.getBuf(), message.size());
+    }
+
+    private static int withoutCarriageReturn(byte[] bytes, int start, int end) {
+        return end > start && bytes[end - 1] == '\r' ? end - 1 : end;
+    }
+
+    private void appendHeader() {
+        if (now != headerTime) {
+            header.reset();
+            header.append(priority);
+            timestampPrinter.formatTo(header, now);
+            header.append(headerSuffix);
+            headerTime = now;
+        }
+        message.putByteArrayByOffsetWithResize(header.getBuf(), 0, header.size());
+    }
+
+    private void appendTruncated(byte[] bytes, int offset, int length) {
+        int room = maxMessageSize - message.size();
+        if (room > 0) {
+            message.putByteArrayByOffsetWithResize(bytes, offset, Math.min(room, length));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.greencheek.logging.disruptor.io;
+
+import org.apache.juli.logging.Log;
+import org.greencheek.util.SingleWriterCounter;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Sends each log line as an RFC 5424 syslog message, in a UDP datagram of its own, to a
+ * (local) syslog daemon or log agent.  The channel is non blocking; a message that cannot
+ * be sent, as the socket's send buffer is full or nothing is listening, is dropped.
+ */
+public class SyslogUdpSink implements AccessLogSink, SyslogFramer.MessageSender {
+
+    private final InetSocketAddress address;
+    private final DatagramChannel channel;
+    private final SyslogFramer framer;
+    private final ByteBuffer datagram;
+    private final Log log;
+
+    private final SingleWriterCounter bytesDropped = new SingleWriterCounter();
+    private boolean sendFailureLogged = false;
+
+    /**
+     * @param host the host the syslog daemon is listening on
+     * @param port the port the syslog daemon is listening on
+     * @param framer frames each line as a syslog message
+     * @param maxMessageSize the max size of a datagram, longer messages are truncated
+     * @param log
+     * @throws IOException if the host cannot be resolved, or the channel opened
+     */
+    public SyslogUdpSink(String host, int port, SyslogFramer framer, int maxMessageSize, Log log) throws IOException {
+        this.address = new InetSocketAddress(host, port);
+        if (address.isUnresolved()) {
+            throw new IOException("Unable to resolve syslog host:" + host);
+        }
+        this.framer = framer;
+        this.datagram = ByteBuffer.allocateDirect(maxMessageSize);
+        this.log = log;
+        this.channel = DatagramChannel.open();
+        try {
+            channel.configureBlocking(false);
+            // connected, so that the destination is only checked the once
+            channel.connect(address);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        framer.setTime(System.currentTimeMillis());
+        framer.frame(bytes, offset, length, this);
+    }
+
+    @Override
+    public void write(ByteBuffer[] buffers, int offset, int length) throws IOException {
+        framer.setTime(System.currentTimeMillis());
+        for (int i = offset; i < offset + length; i++) {
+            framer.frame(buffers[i], this);
+        }
+    }
+
+    @Override
+    public void send(byte[] message, int length) {
+        datagram.clear();
+        datagram.put(message, 0, Math.min(length, datagram.capacity()));
+        datagram.flip();
+        try {
+            if (channel.write(datagram) == 0) {
+                // the socket's send buffer is full
+                bytesDropped.add(length);
+            } else {
+                sendFailureLogged = false;
+            }
+        } catch (IOException e) {
+            // such as nothing listening on the port
+            bytesDropped.add(length);
+            if (!sendFailureLogged) {
+                sendFailureLogged = true;
+                log.warn("Unable to send access log messages to syslog at " + address, e);
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        // each message is sent as it is framed
+    }
+
+    @Override
+    public long getBytesDropped() {
+        return bytesDropped.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return "syslog udp://" + address;
+    }
+}
@@ -0,0 +1,55 @@
+package org.greencheek.logging.disruptor.io;
+
+import org.apache.juli.logging.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Streams the log lines over TCP to a (local) log agent, or syslog daemon when the lines
+ * are framed as syslog messages.  The host name is resolved on each attempt to connect.
+ */
+public class TcpSink extends SocketChannelSink {
+
+    private final String host;
+    private final int port;
+
+    /**
+     * @param host the host the agent is listening on
+     * @param port the port the agent is listening on
+     * @param framer frames each line as a syslog message, null to send the lines as they are
+     * @param backlogSize the max number of bytes held while the agent cannot take them
+     * @param minBackoffMillis the time to wait before reconnecting, after the connection fails
+     * @param maxBackoffMillis the max time to wait between attempts to reconnect
+     * @param log
+     */
+    public TcpSink(String host, int port, SyslogFramer framer, int backlogSize,
+                   long minBackoffMillis, long maxBackoffMillis, Log log) {
+        super(framer, backlogSize, minBackoffMillis, maxBackoffMillis, log);
+        this.host = host;
+        this.port = port;
+    }
+
+    @Override
+    protected SocketChannel connect() throws IOException {
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        if (address.isUnresolved()) {
+            throw new IOException("Unable to resolve host:" + host);
+        }
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.connect(address);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    @Override
+    public String toString() {
+        return "tcp://" + host + ":" + port;
+    }
+}
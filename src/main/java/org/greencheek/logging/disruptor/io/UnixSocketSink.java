@@ -0,0 +1,97 @@
+package org.greencheek.logging.disruptor.io;
+
+import org.apache.juli.logging.Log;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Streams the log lines over a Unix domain (stream) socket to a local log agent.  Unix
+ * domain socket channels arrived with Java 16, so are created by reflection; on earlier
+ * versions {@link #isSupported()} is false.
+ */
+public class UnixSocketSink extends SocketChannelSink {
+
+    private static final ProtocolFamily UNIX_FAMILY;
+    private static final Method OPEN_CHANNEL;
+    private static final Method ADDRESS_OF;
+
+    static {
+        ProtocolFamily family = null;
+        Method open = null;
+        Method addressOf = null;
+        try {
+            family = StandardProtocolFamily.valueOf("UNIX");
+            open = SocketChannel.class.getMethod("open", ProtocolFamily.class);
+            addressOf = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class);
+        } catch (Exception e) {
+            // before java 16
+            family = null;
+        }
+        UNIX_FAMILY = family;
+        OPEN_CHANNEL = open;
+        ADDRESS_OF = addressOf;
+    }
+
+    private final String path;
+
+    /**
+     * @param path the path of the socket the agent is listening on
+     * @param framer frames each line as a syslog message, null to send the lines as they are
+     * @param backlogSize the max number of bytes held while the agent cannot take them
+     * @param minBackoffMillis the time to wait before reconnecting, after the connection fails
+     * @param maxBackoffMillis the max time to wait between attempts to reconnect
+     * @param log
+     */
+    public UnixSocketSink(String path, SyslogFramer framer, int backlogSize,
+                          long minBackoffMillis, long maxBackoffMillis, Log log) {
+        super(framer, backlogSize, minBackoffMillis, maxBackoffMillis, log);
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Unix domain sockets need Java 16 or later");
+        }
+        this.path = path;
+    }
+
+    /**
+     * Whether the running java has unix domain socket channels
+     */
+    public static boolean isSupported() {
+        return UNIX_FAMILY != null && OPEN_CHANNEL != null && ADDRESS_OF != null;
+    }
+
+    @Override
+    protected SocketChannel connect() throws IOException {
+        SocketChannel channel;
+        SocketAddress address;
+        try {
+            address = (SocketAddress) ADDRESS_OF.invoke(null, path);
+            channel = (SocketChannel) OPEN_CHANNEL.invoke(null, UNIX_FAMILY);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Unable to open unix domain socket:" + path, cause);
+        } catch (IllegalAccessException e) {
+            throw new IOException("Unable to open unix domain socket:" + path, e);
+        }
+        try {
+            channel.configureBlocking(false);
+            channel.connect(address);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    @Override
+    public String toString() {
+        return "unix://" + path;
+    }
+}
@@ -0,0 +1,301 @@
+package org.greencheek.logging.domin;
+
+import org.greencheek.logging.accesscomponents.AccessLogElement;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The ring buffer slot.  The buffer the log line is rendered into, along with
+ * the date of the request being logged, and the timings used to measure the latency
+ * of the log line: the time at which the line was published, and how long the
+ * line took to render.  The timings are 0 when latency is not being recorded.
+ *
+ * In capture mode the line is not rendered by the request thread.  Instead the
+ * elements of the line, a long captured by each element, and the bytes of the
+ * elements that cannot be captured as a long, are held in the event until rendered
+ * (see {@link #getCapturedElements()}).
+ *
+ * If the slot is {@link SlotSizing sized adaptively}, a line that does not fit borrows a
+ * buffer from the overflow arena, which is given back when the event is reset; at which
+ * point the slot is also grown to the learnt capacity, or shrunk if it has grown too big.
+ *
+ * If the slot has {@link OffHeapSlotArena off heap} storage, the rendered line (and its line
+ * ending) is put there instead (see {@link #putOffHeap(byte[], int)}); the heap buffer only
+ * being used for a line too long for the off heap slot.
+ *
+ * Not thread safe!
+ */
+public class AccessLogEvent extends ResizableByteBuffer {
+
+    private long logDate;
+    private long publishNanos;
+    private long translateNanos;
+
+    private static final long[] NO_VALUES = new long[0];
+
+    // whether the line has been transcoded to the log file's charset (or failed to be)
+    private boolean encoded;
+    private boolean encodeFailed;
+
+    private AccessLogElement[] capturedElements;
+    private long[] capturedValues = NO_VALUES;
+    private ResizableByteBuffer capturedBytes;
+
+    private final SlotSizing sizing;
+    // the slot's own array, while the line is held in a buffer borrowed from the overflow arena
+    private byte[] slotBuf;
+    private byte[] borrowedBuf;
+
+    private static final byte[] NO_BYTES = new byte[0];
+
+    // the off heap slot, its length header followed by the line; null if there is none
+    private final ByteBuffer offHeapSlot;
+    private final byte[] offHeapLineEnding;
+    private final int maxOffHeapLine;
+    private boolean offHeap;
+
+    // a view of the heap buffer, recreated when the buffer changes
+    private ByteBuffer heapLine;
+
+    public AccessLogEvent(int capacity) {
+        super(capacity);
+        this.sizing = null;
+        this.offHeapSlot = null;
+        this.offHeapLineEnding = null;
+        this.maxOffHeapLine = 0;
+    }
+
+    public AccessLogEvent(SlotSizing sizing) {
+        super(sizing.getSlotCapacity());
+        this.sizing = sizing;
+        this.offHeapSlot = null;
+        this.offHeapLineEnding = null;
+        this.maxOffHeapLine = 0;
+    }
+
+    /**
+     * An event that holds its line in the next slot of the given arena.  The heap
+     * buffer starts empty, and is only allocated for a line that does not fit.
+     */
+    public AccessLogEvent(OffHeapSlotArena arena) {
+        super(0);
+        this.sizing = null;
+        this.offHeapSlot = arena.nextSlot();
+        if (offHeapSlot == null) {
+            throw new IllegalStateException("No free slots in the off heap arena");
+        }
+        this.offHeapLineEnding = arena.getLineEnding();
+        this.maxOffHeapLine = arena.getMaxLineLength();
+    }
+
+    public long getLogDate() {
+        return logDate;
+    }
+
+    public void setLogDate(long logDate) {
+        this.logDate = logDate;
+    }
+
+    public long getPublishNanos() {
+        return publishNanos;
+    }
+
+    public long getTranslateNanos() {
+        return translateNanos;
+    }
+
+    public void setTimings(long publishNanos, long translateNanos) {
+        this.publishNanos = publishNanos;
+        this.translateNanos = translateNanos;
+    }
+
+    /**
+     * Starts the capture of the given elements
+     *
+     * @return the array to hold the value captured for each element.
+     */
+    public long[] startCapture(AccessLogElement[] elements) {
+        capturedElements = elements;
+        if (capturedValues.length < elements.length) {
+            capturedValues = new long[elements.length];
+        }
+        if (capturedBytes == null) {
+            capturedBytes = new ResizableByteBuffer(buf.length);
+        }
+        return capturedValues;
+    }
+
+    /**
+     * @return the elements captured, null if the event holds a rendered line
+     */
+    public AccessLogElement[] getCapturedElements() {
+        return capturedElements;
+    }
+
+    public long[] getCapturedValues() {
+        return capturedValues;
+    }
+
+    /**
+     * The rendered bytes of the elements that do not capture a long; one after the other.
+     */
+    public ResizableByteBuffer getCapturedBytes() {
+        return capturedBytes;
+    }
+
+    /**
+     * Called once the captured elements have been rendered into the event
+     */
+    public void endCapture() {
+        capturedElements = null;
+        capturedBytes.reset();
+    }
+
+    public boolean isEncoded() {
+        return encoded;
+    }
+
+    public boolean isEncodeFailed() {
+        return encodeFailed;
+    }
+
+    /**
+     * Replaces the line with the given transcoded version of it
+     */
+    public void setEncoded(ByteBuffer encodedLine) {
+        position = 0;
+        currentCapacityLeft = buf.length;
+        putByteArrayByOffsetWithResize(encodedLine.array(), encodedLine.arrayOffset() + encodedLine.position(),
+                encodedLine.remaining());
+        encoded = true;
+    }
+
+    /**
+     * The line could not be transcoded, it is left as UTF-8
+     */
+    public void setEncodeFailed() {
+        encoded = true;
+        encodeFailed = true;
+    }
+
+    /**
+     * Whether the event has an off heap slot, that the line should be put in
+     */
+    public boolean hasOffHeapSlot() {
+        return offHeapSlot != null;
+    }
+
+    /**
+     * Puts the given line in the off heap slot, followed by the line ending.
+     *
+     * @return false if there is no off heap slot, or the line does not fit; in which case
+     *         the line should be put in the heap buffer as usual.
+     */
+    public boolean putOffHeap(byte[] line, int length) {
+        if (offHeapSlot == null || length > maxOffHeapLine) {
+            return false;
+        }
+        offHeapSlot.clear();
+        offHeapSlot.putInt(length + offHeapLineEnding.length);
+        offHeapSlot.put(line, 0, length);
+        offHeapSlot.put(offHeapLineEnding);
+        offHeap = true;
+        return true;
+    }
+
+    /**
+     * The line (with its line ending) held in the off heap slot, ready to be written;
+     * null if the line is in the heap buffer.  The buffer returned is that of the slot,
+     * it is only valid until the event is next published to.
+     */
+    public ByteBuffer getOffHeapLine() {
+        if (!offHeap) {
+            return null;
+        }
+        int length = offHeapSlot.getInt(0);
+        offHeapSlot.limit(OffHeapSlotArena.HEADER_SIZE + length);
+        offHeapSlot.position(OffHeapSlotArena.HEADER_SIZE);
+        return offHeapSlot;
+    }
+
+    /**
+     * The line in the heap buffer, ready to be written.  The buffer returned wraps that
+     * of the slot, it is only valid until the event is next published to.  Null if the
+     * line is in a buffer borrowed from the overflow arena, as that is given back (and can
+     * be lent to another slot) when the event is reset.
+     */
+    public ByteBuffer getHeapLine() {
+        if (borrowedBuf != null) {
+            return null;
+        }
+        if (heapLine == null || heapLine.array() != buf) {
+            heapLine = ByteBuffer.wrap(buf);
+        }
+        heapLine.clear();
+        heapLine.limit(position);
+        return heapLine;
+    }
+
+    @Override
+    protected void grow(int extra) {
+        if (sizing != null && borrowedBuf == null && sizing.getOverflowArena() != null) {
+            byte[] borrowed = sizing.getOverflowArena().borrow(position + extra);
+            if (borrowed != null) {
+                System.arraycopy(buf, 0, borrowed, 0, position);
+                slotBuf = buf;
+                borrowedBuf = borrowed;
+                buf = borrowed;
+                currentCapacityLeft = borrowed.length - position;
+                return;
+            }
+        }
+        super.grow(extra);
+    }
+
+    /**
+     * Records the length of the line, gives back any buffer borrowed from the
+     * overflow arena, and resizes the slot: growing it to the learnt capacity, or
+     * shrinking it if it has grown too big.  Done by the consumer thread, so that
+     * only the rare long line outgrows its slot on the request thread.
+     */
+    private void resize() {
+        int captured = capturedBytes == null ? 0 : capturedBytes.size();
+        sizing.record(Math.max(position, captured));
+        if (borrowedBuf != null) {
+            sizing.getOverflowArena().giveBack(borrowedBuf);
+            buf = slotBuf;
+            borrowedBuf = null;
+            slotBuf = null;
+        }
+        int capacity = sizing.getSlotCapacity();
+        if (buf.length < capacity || buf.length > sizing.getMaxRetainedCapacity()) {
+            buf = new byte[capacity];
+        }
+        if (capturedBytes != null) {
+            int capturedCapacity = capturedBytes.getBuf().length;
+            if (capturedCapacity < capacity || capturedCapacity > sizing.getMaxRetainedCapacity()) {
+                capturedBytes = new ResizableByteBuffer(capacity);
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        if (sizing != null) {
+            resize();
+        } else if (offHeapSlot != null && buf.length > 0) {
+            // the long line is not kept on the heap
+            buf = NO_BYTES;
+        }
+        offHeap = false;
+        super.reset();
+        encoded = false;
+        encodeFailed = false;
+        if (capturedElements != null) {
+            endCapture();
+        }
+        logDate = 0;
+        publishNanos = 0;
+        translateNanos = 0;
+    }
+}
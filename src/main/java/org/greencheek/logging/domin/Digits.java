@@ -0,0 +1,123 @@
+package org.greencheek.logging.domin;
+
+/**
+ * Writes the decimal digits of a number straight into a byte or char array, working
+ * back from the end, two digits at a time; as {@link Long#toString(long)} does, but
+ * without the intermediate String.
+ */
+final class Digits {
+
+    static final char[] LONG_MIN_VALUE = Long.toString(Long.MIN_VALUE).toCharArray();
+
+    static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L,
+            1000000000L, 10000000000L, 100000000000L, 1000000000000L, 10000000000000L,
+            100000000000000L, 1000000000000000L, 10000000000000000L, 100000000000000000L,
+            1000000000000000000L
+    };
+
+    static final char[] DIGIT_TENS = {
+            '0', '0', '0', '0', '0', '0', '0', '0', '0', '0',
+            '1', '1', '1', '1', '1', '1', '1', '1', '1', '1',
+            '2', '2', '2', '2', '2', '2', '2', '2', '2', '2',
+            '3', '3', '3', '3', '3', '3', '3', '3', '3', '3',
+            '4', '4', '4', '4', '4', '4', '4', '4', '4', '4',
+            '5', '5', '5', '5', '5', '5', '5', '5', '5', '5',
+            '6', '6', '6', '6', '6', '6', '6', '6', '6', '6',
+            '7', '7', '7', '7', '7', '7', '7', '7', '7', '7',
+            '8', '8', '8', '8', '8', '8', '8', '8', '8', '8',
+            '9', '9', '9', '9', '9', '9', '9', '9', '9', '9',
+    };
+
+    static final char[] DIGIT_ONES = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+    };
+
+    private Digits() {
+    }
+
+    /**
+     * The number of digits in the given non negative value
+     */
+    static int stringSize(long value) {
+        long p = 10;
+        for (int i = 1; i < 19; i++) {
+            if (value < p) {
+                return i;
+            }
+            p = 10 * p;
+        }
+        return 19;
+    }
+
+    /**
+     * Writes the digits of the given non negative value into the array, ending just before <code>end</code>
+     */
+    static void getBytes(long value, int end, byte[] buf) {
+        int pos = end;
+        int r;
+        // Get 2 digits/iteration using longs until quotient fits into an int
+        while (value > Integer.MAX_VALUE) {
+            long q = value / 100;
+            r = (int) (value - ((q << 6) + (q << 5) + (q << 2)));  // r = value - (q * 100)
+            value = q;
+            buf[--pos] = (byte) DIGIT_ONES[r];
+            buf[--pos] = (byte) DIGIT_TENS[r];
+        }
+        int i = (int) value;
+        while (i >= 65536) {
+            int q = i / 100;
+            r = i - ((q << 6) + (q << 5) + (q << 2));  // r = i - (q * 100)
+            i = q;
+            buf[--pos] = (byte) DIGIT_ONES[r];
+            buf[--pos] = (byte) DIGIT_TENS[r];
+        }
+        // Fall thru to fast mode for smaller numbers
+        for (;;) {
+            int q = (i * 52429) >>> (16 + 3);
+            r = i - ((q << 3) + (q << 1));  // r = i - (q * 10)
+            buf[--pos] = (byte) DIGIT_ONES[r];
+            i = q;
+            if (i == 0) break;
+        }
+    }
+
+    /**
+     * Writes the digits of the given non negative value into the array, ending just before <code>end</code>
+     */
+    static void getChars(long value, int end, char[] buf) {
+        int pos = end;
+        int r;
+        while (value > Integer.MAX_VALUE) {
+            long q = value / 100;
+            r = (int) (value - ((q << 6) + (q << 5) + (q << 2)));
+            value = q;
+            buf[--pos] = DIGIT_ONES[r];
+            buf[--pos] = DIGIT_TENS[r];
+        }
+        int i = (int) value;
+        while (i >= 65536) {
+            int q = i / 100;
+            r = i - ((q << 6) + (q << 5) + (q << 2));
+            i = q;
+            buf[--pos] = DIGIT_ONES[r];
+            buf[--pos] = DIGIT_TENS[r];
+        }
+        for (;;) {
+            int q = (i * 52429) >>> (16 + 3);
+            r = i - ((q << 3) + (q << 1));
+            buf[--pos] = DIGIT_ONES[r];
+            i = q;
+            if (i == 0) break;
+        }
+    }
+}
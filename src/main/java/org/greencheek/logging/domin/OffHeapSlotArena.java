@@ -0,0 +1,76 @@
+package org.greencheek.logging.domin;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One direct (off heap) slab of memory, carved into fixed size slots; one for each slot
+ * of a ring buffer.  Each slot starts with a 4 byte header, the length of the log line
+ * that follows it (line ending included).  As the slab is not on the heap, the lines held
+ * in the ring buffer are not copied about, or scanned, by the garbage collector; and the
+ * slots can be handed straight to a gathering write to the log file.
+ *
+ * Slots are handed out by {@link #nextSlot()} as the ring buffer's events are created,
+ * which is done by a single thread.  What happens to a slot after that is up to the event
+ * that owns it.
+ */
+public class OffHeapSlotArena {
+
+    public static final int HEADER_SIZE = 4;
+
+    private final ByteBuffer slab;
+    private final int slotSize;
+    private final int slotCount;
+    private final byte[] lineEnding;
+    private int allocated = 0;
+
+    /**
+     * @param slotCount the number of slots, the size of the ring buffer
+     * @param slotSize the size of each slot, header included
+     * @param lineEnding the bytes appended to each line put in a slot
+     */
+    public OffHeapSlotArena(int slotCount, int slotSize, byte[] lineEnding) {
+        if (slotSize <= HEADER_SIZE + lineEnding.length) {
+            throw new IllegalArgumentException("Slot size too small:" + slotSize);
+        }
+        if ((long) slotCount * slotSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Slots too large for one slab:" + slotCount + " x " + slotSize);
+        }
+        this.slab = ByteBuffer.allocateDirect(slotCount * slotSize);
+        this.slotSize = slotSize;
+        this.slotCount = slotCount;
+        this.lineEnding = lineEnding.clone();
+    }
+
+    /**
+     * A view of the next free slot, or null if they have all been handed out
+     */
+    public ByteBuffer nextSlot() {
+        if (allocated == slotCount) {
+            return null;
+        }
+        ByteBuffer view = slab.duplicate();
+        view.position(allocated * slotSize);
+        view.limit(view.position() + slotSize);
+        allocated++;
+        return view.slice();
+    }
+
+    /**
+     * The longest line a slot holds, not counting the line ending
+     */
+    public int getMaxLineLength() {
+        return slotSize - HEADER_SIZE - lineEnding.length;
+    }
+
+    public byte[] getLineEnding() {
+        return lineEnding;
+    }
+
+    public int getSlotSize() {
+        return slotSize;
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+}
@@ -0,0 +1,81 @@
+package org.greencheek.logging.domin;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed number of large buffers, lent to the ring buffer slots whose log line does not
+ * fit; the slot returns the buffer once the line has been written.  The buffers are
+ * created as they are first needed, and are kept from then on.  When none is free, or the
+ * line is too big for one, the slot grows as it would without the arena.
+ *
+ * Thread safe.
+ */
+public class OverflowArena {
+
+    private final AtomicReferenceArray<byte[]> buffers;
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicLong borrowed = new AtomicLong();
+    private final int bufferSize;
+
+    /**
+     * @param bufferCount the max number of buffers
+     * @param bufferSize the size of each buffer
+     */
+    public OverflowArena(int bufferCount, int bufferSize) {
+        this.buffers = new AtomicReferenceArray<byte[]>(Math.max(0, bufferCount));
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * @param size the size needed
+     * @return a free buffer, or null if there is none, or the size is more than a buffer holds
+     */
+    public byte[] borrow(int size) {
+        if (size > bufferSize) {
+            return null;
+        }
+        int count = buffers.length();
+        for (int i = 0; i < count; i++) {
+            byte[] buffer = buffers.get(i);
+            if (buffer != null && buffers.compareAndSet(i, buffer, null)) {
+                borrowed.incrementAndGet();
+                return buffer;
+            }
+        }
+        while (true) {
+            int current = created.get();
+            if (current >= count) {
+                return null;
+            }
+            if (created.compareAndSet(current, current + 1)) {
+                borrowed.incrementAndGet();
+                return new byte[bufferSize];
+            }
+        }
+    }
+
+    /**
+     * Returns a buffer obtained from {@link #borrow(int)}
+     */
+    public void giveBack(byte[] buffer) {
+        int count = buffers.length();
+        for (int i = 0; i < count; i++) {
+            if (buffers.get(i) == null && buffers.compareAndSet(i, null, buffer)) {
+                return;
+            }
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * The number of times a buffer has been lent
+     */
+    public long getBorrowed() {
+        return borrowed.get();
+    }
+}
@@ -0,0 +1,343 @@
+package org.greencheek.logging.domin;
+
+import org.greencheek.logging.convertor.StringToResizableByteBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+
+class ResizableByteBufferH1 {
+    public int p01, p02, p03, p04, p05, p06, p07, p08;
+    public int p11, p12, p13, p14, p15, p16, p17, p18;
+}
+
+class ResizableByteBufferData extends ResizableByteBufferH1 {
+    protected byte[] buf;
+    protected int currentCapacityLeft;
+    protected int position;
+}
+
+class ResizableByteBufferTail extends ResizableByteBufferData {
+    public int p01, p02, p03, p04, p05, p06, p07, p08;
+    public int p11, p12, p13, p14, p15, p16, p17, p18;
+
+}
+
+/**
+ * Byte oriented equivalent of the {@link ResizableCharBuffer}.  Characters appended
+ * to the buffer are encoded as UTF-8 as they are written, so that the contents of the
+ * buffer can be written straight to disk, without having to go through a CharsetEncoder
+ * (which creates a new ByteBuffer per encode).
+ *
+ * Any ASCII character is a single byte, so the common case for an access log line is a
+ * straight copy.
+ *
+ * Not thread safe!
+ */
+public class ResizableByteBuffer extends ResizableByteBufferTail {
+
+    public static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte REPLACEMENT_BYTE = (byte)'?';
+
+    private static final StringToResizableByteBuffer convertor = StringToResizableByteBuffer.DEFAULT_INSTANCE;
+
+    public ResizableByteBuffer(int capacity) {
+        currentCapacityLeft = capacity;
+        buf = new byte[capacity];
+    }
+
+    public int size() {
+        return position;
+    }
+
+    public void reset() {
+        position = 0;
+        currentCapacityLeft = buf.length;
+    }
+
+    public byte[] getBuf() {
+        return buf;
+    }
+
+    public ByteBuffer getByteBuffer() {
+        return ByteBuffer.wrap(buf,0,position);
+    }
+
+    public String toString() {
+        return new String(buf,0,position,UTF8);
+    }
+
+    private void checkSizeAndGrow(int extra) {
+        if(extra>currentCapacityLeft) {
+            grow(extra);
+        }
+    }
+
+    /**
+     * Replaces the array with one that has room for at least <code>extra</code> more bytes
+     */
+    protected void grow(int extra) {
+        int currentCapacity = buf.length;
+
+        int newSize = currentCapacity*2;
+        if(newSize<0 || newSize-position<extra) {
+            newSize = position+extra;
+            if(newSize<0) {
+                throw new OutOfMemoryError();
+            }
+        }
+        currentCapacityLeft = newSize - position;
+
+        byte[] newBuf = new byte[newSize];
+        System.arraycopy(buf,0,newBuf,0,position);
+        buf = newBuf;
+    }
+
+    public void append(byte b) {
+        if(currentCapacityLeft==0) grow(1);
+        appendNoResize(b);
+    }
+
+    public void append(byte[] bytes) {
+        int len = bytes.length;
+        if(len==1) {
+            append(bytes[0]);
+        } else {
+            checkSizeAndGrow(len);
+            putByteArrayByOffset(bytes,0,len);
+        }
+    }
+
+    public void putByteArrayByOffsetWithResize(byte[] b, int off, int len) {
+        checkSizeAndGrow(len);
+        putByteArrayByOffset(b,off,len);
+    }
+
+    private void putByteArrayByOffset(byte[] b, int off, int len) {
+        System.arraycopy(b,off,buf,position,len);
+        position+=len;
+        currentCapacityLeft-=len;
+    }
+
+    private void appendNoResize(byte b) {
+        buf[position++]=b;
+        currentCapacityLeft--;
+    }
+
+    public void append(char c) {
+        if(c<0x80) {
+            if(currentCapacityLeft==0) grow(1);
+            appendNoResize((byte)c);
+        } else {
+            appendNonAscii(c);
+        }
+    }
+
+    public void append(char c1, char c2) {
+        append(c1);
+        append(c2);
+    }
+
+    public void append(char c1, char c2, char c3) {
+        append(c1);
+        append(c2);
+        append(c3);
+    }
+
+    public void append(String s) {
+        convertor.copyStringToByteBuffer(s,this);
+    }
+
+    public void append(String s, char c, String chars) {
+        append(s);
+        append(c);
+        append(chars);
+    }
+
+    public void append(String s,char c) {
+        append(s);
+        append(c);
+    }
+
+    public void append(char[] s, char c, String chars) {
+        append(s);
+        append(c);
+        append(chars);
+    }
+
+    public void append(char c, String s) {
+        append(c);
+        append(s);
+    }
+
+    /**
+     * Appends the decimal digits of the given value, without creating a String
+     */
+    public void appendInt(int value) {
+        appendLong(value);
+    }
+
+    /**
+     * Appends the decimal digits of the given value, without creating a String
+     */
+    public void appendLong(long value) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                append(Digits.LONG_MIN_VALUE);
+                return;
+            }
+            append((byte) '-');
+            value = -value;
+        }
+        int size = Digits.stringSize(value);
+        checkSizeAndGrow(size);
+        Digits.getBytes(value, position + size, buf);
+        position += size;
+        currentCapacityLeft -= size;
+    }
+
+    /**
+     * Appends the given value scaled down by 10^<code>fractionDigits</code>, with that many
+     * digits after the decimal point; i.e. <code>appendFixedDecimal(1234, 3)</code> appends
+     * <code>1.234</code>
+     */
+    public void appendFixedDecimal(long value, int fractionDigits) {
+        if (fractionDigits <= 0) {
+            appendLong(value);
+            return;
+        }
+        long scale = Digits.POWERS_OF_TEN[fractionDigits];
+        long integral = value / scale;
+        long fraction = value % scale;
+        if (value < 0) {
+            append((byte) '-');
+            integral = -integral;
+            fraction = -fraction;
+        }
+        appendLong(integral);
+        append((byte) '.');
+        for (int i = Digits.stringSize(fraction); i < fractionDigits; i++) {
+            append((byte) '0');
+        }
+        appendLong(fraction);
+    }
+
+    public void append(char[] chars) {
+        int len = chars.length;
+        if(len==1) {
+            append(chars[0]);
+        } else {
+            putCharArrayByOffsetWithResize(chars,0,len);
+        }
+    }
+
+    /**
+     * Appends the given chars, encoding them as UTF-8.  The buffer is first sized
+     * as if every char is ASCII; only when a non ASCII char is met is the slower
+     * encoding path taken.
+     */
+    public void putCharArrayByOffsetWithResize(char[] b, int off, int len) {
+        checkSizeAndGrow(len);
+        final byte[] bytes = buf;
+        final int end = off+len;
+        int pos = position;
+        int i = off;
+        for(;i<end;i++) {
+            char c = b[i];
+            if(c>=0x80) break;
+            bytes[pos++] = (byte)c;
+        }
+        currentCapacityLeft -= (pos-position);
+        position = pos;
+
+        for(;i<end;i++) {
+            char c = b[i];
+            if(c<0x80) {
+                append(c);
+            } else if(Character.isHighSurrogate(c) && i+1<end && Character.isLowSurrogate(b[i+1])) {
+                appendCodePoint(Character.toCodePoint(c,b[++i]));
+            } else {
+                appendNonAscii(c);
+            }
+        }
+    }
+
+    /**
+     * Appends the chars of the given string between <code>off</code> and <code>end</code>,
+     * encoding them as UTF-8.
+     */
+    public void putStringWithResize(String s, int off, int end) {
+        checkSizeAndGrow(end-off);
+        final byte[] bytes = buf;
+        int pos = position;
+        int i = off;
+        for(;i<end;i++) {
+            char c = s.charAt(i);
+            if(c>=0x80) break;
+            bytes[pos++] = (byte)c;
+        }
+        currentCapacityLeft -= (pos-position);
+        position = pos;
+
+        for(;i<end;i++) {
+            char c = s.charAt(i);
+            if(c<0x80) {
+                append(c);
+            } else if(Character.isHighSurrogate(c) && i+1<end && Character.isLowSurrogate(s.charAt(i+1))) {
+                appendCodePoint(Character.toCodePoint(c,s.charAt(++i)));
+            } else {
+                appendNonAscii(c);
+            }
+        }
+    }
+
+    /**
+     * Appends the given ISO-8859-1 bytes (the value of a compact String), encoding them
+     * as UTF-8.  ASCII bytes are copied as they are.
+     */
+    public void putLatin1WithResize(byte[] latin1, int off, int len) {
+        checkSizeAndGrow(len);
+        final byte[] bytes = buf;
+        final int end = off+len;
+        int pos = position;
+        int i = off;
+        for(;i<end;i++) {
+            byte b = latin1[i];
+            if(b<0) break;
+            bytes[pos++] = b;
+        }
+        currentCapacityLeft -= (pos-position);
+        position = pos;
+
+        for(;i<end;i++) {
+            append((char)(latin1[i] & 0xff));
+        }
+    }
+
+    private void appendNonAscii(char c) {
+        checkSizeAndGrow(3);
+        if(c<0x800) {
+            buf[position++] = (byte)(0xc0 | (c >> 6));
+            buf[position++] = (byte)(0x80 | (c & 0x3f));
+            currentCapacityLeft-=2;
+        } else if(Character.isSurrogate(c)) {
+            // unpaired surrogate, cannot be encoded
+            appendNoResize(REPLACEMENT_BYTE);
+        } else {
+            buf[position++] = (byte)(0xe0 | (c >> 12));
+            buf[position++] = (byte)(0x80 | ((c >> 6) & 0x3f));
+            buf[position++] = (byte)(0x80 | (c & 0x3f));
+            currentCapacityLeft-=3;
+        }
+    }
+
+    private void appendCodePoint(int codePoint) {
+        checkSizeAndGrow(4);
+        buf[position++] = (byte)(0xf0 | (codePoint >> 18));
+        buf[position++] = (byte)(0x80 | ((codePoint >> 12) & 0x3f));
+        buf[position++] = (byte)(0x80 | ((codePoint >> 6) & 0x3f));
+        buf[position++] = (byte)(0x80 | (codePoint & 0x3f));
+        currentCapacityLeft-=4;
+    }
+}
@@ -1,7 +1,6 @@
 package org.greencheek.logging.domin;
 
 import org.greencheek.logging.convertor.StringToResizableCharBuffer;
-import org.greencheek.util.UnsafeString;
 
 import java.io.IOException;
 import java.io.OutputStream;
@@ -32,7 +31,7 @@ class ResizableCharBufferTail extends ResizableCharBufferData{
  */
 public class ResizableCharBuffer extends ResizableCharBufferTail {
 
-//    private static final StringToResizableCharBuffer convertor = StringToResizableCharBuffer.DEFAULT_INSTANCE;
+    private static final StringToResizableCharBuffer convertor = StringToResizableCharBuffer.DEFAULT_INSTANCE;
 
     public ResizableCharBuffer(int capacity) {
         currentCapacityLeft = capacity;
@@ -70,13 +69,13 @@ public class ResizableCharBuffer extends ResizableCharBufferTail {
         int currentCapacity = buf.length;
 
         int newSize = currentCapacity*2;
-        if(newSize<0) {
-            newSize = currentCapacity+extra;
+        if(newSize<0 || newSize-position<extra) {
+            newSize = position+extra;
             if(newSize<0) {
                 throw new OutOfMemoryError();
             }
         }
-        currentCapacityLeft = newSize - currentCapacity;
+        currentCapacityLeft = newSize - position;
 
         char[] newBuf = new char[newSize];
         System.arraycopy(buf,0,newBuf,0,position);
@@ -84,8 +83,7 @@ public class ResizableCharBuffer extends ResizableCharBufferTail {
     }
 
     public void append(String s) {
-        char[] stringarray = UnsafeString.getChars(s);
-        putCharArrayByOffsetWithResize(stringarray,UnsafeString.getOffset(s),s.length());
+        convertor.copyStringToCharBuffer(s,this);
     }
 
     public void append(char c1, char c2, char c3) {
@@ -104,8 +102,7 @@ public class ResizableCharBuffer extends ResizableCharBufferTail {
     }
 
     private void appendNoResize(String s) {
-        char[] stringarray = UnsafeString.getChars(s);
-        putCharArrayByOffset(stringarray,UnsafeString.getOffset(s),s.length());
+        convertor.copyStringToCharBuffer(s,this);
     }
 
     public void append(String s, char c, String chars) {
@@ -152,6 +149,58 @@ public class ResizableCharBuffer extends ResizableCharBufferTail {
 
 
 
+    /**
+     * Appends the decimal digits of the given value, without creating a String
+     */
+    public void appendInt(int value) {
+        appendLong(value);
+    }
+
+    /**
+     * Appends the decimal digits of the given value, without creating a String
+     */
+    public void appendLong(long value) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                append(Digits.LONG_MIN_VALUE);
+                return;
+            }
+            append('-');
+            value = -value;
+        }
+        int size = Digits.stringSize(value);
+        checkSizeAndGrow(size);
+        Digits.getChars(value, position + size, buf);
+        position += size;
+        currentCapacityLeft -= size;
+    }
+
+    /**
+     * Appends the given value scaled down by 10^<code>fractionDigits</code>, with that many
+     * digits after the decimal point; i.e. <code>appendFixedDecimal(1234, 3)</code> appends
+     * <code>1.234</code>
+     */
+    public void appendFixedDecimal(long value, int fractionDigits) {
+        if (fractionDigits <= 0) {
+            appendLong(value);
+            return;
+        }
+        long scale = Digits.POWERS_OF_TEN[fractionDigits];
+        long integral = value / scale;
+        long fraction = value % scale;
+        if (value < 0) {
+            append('-');
+            integral = -integral;
+            fraction = -fraction;
+        }
+        appendLong(integral);
+        append('.');
+        for (int i = Digits.stringSize(fraction); i < fractionDigits; i++) {
+            append('0');
+        }
+        appendLong(fraction);
+    }
+
     public void append(char[] chars) {
         int len = chars.length;
         if(len==1) {
@@ -167,6 +216,17 @@ public class ResizableCharBuffer extends ResizableCharBufferTail {
         putCharArrayByOffset(b,off,len);
     }
 
+    /**
+     * Copies the chars of the given string between <code>off</code> and <code>end</code>
+     */
+    public void putStringWithResize(String s, int off, int end) {
+        int len = end-off;
+        checkSizeAndGrow(len);
+        s.getChars(off,end,buf,position);
+        position+=len;
+        currentCapacityLeft-=len;
+    }
+
     private void putCharArrayByOffset(char[] b, int off, int len) {
         System.arraycopy(b,off,buf,position,len);
         position+=len;
@@ -0,0 +1,105 @@
+package org.greencheek.logging.domin;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sizes the ring buffer slots from the lengths of the log lines seen.  The length of
+ * each line is recorded as its slot is reset, by the thread consuming the events; and
+ * every so often the slot capacity is set to the given percentile of the recorded
+ * lengths.  The counts are then halved, so that the capacity follows the traffic.
+ *
+ * A used slot smaller than the capacity is grown to it as it is reset, so that only the
+ * rare long line outgrows its slot.  A slot that has grown beyond the max retained capacity is shrunk back once used, so a
+ * few long lines do not leave the ring holding on to big arrays.  Lines that outgrow their
+ * slot borrow a buffer from the overflow arena, if there is one free, rather than having a
+ * new array allocated by the request thread.
+ *
+ * Thread safe; but as the counts are updated for every event, each ring buffer should have
+ * its own, so that the consumers of different ring buffers do not contend on them.
+ */
+public class SlotSizing {
+
+    private static final int BUCKET_SIZE = 64;
+    private static final int UPDATE_INTERVAL = 1 << 16;
+
+    private final int maxRetainedCapacity;
+    private final double percentile;
+    private final OverflowArena overflowArena;
+
+    // line lengths, in BUCKET_SIZE buckets; the last bucket holds anything over the max retained capacity
+    private final AtomicLongArray lengthCounts;
+    private final AtomicLong linesRecorded = new AtomicLong();
+
+    private volatile int slotCapacity;
+
+    /**
+     * @param initialCapacity the capacity of the slots, until enough lines have been seen
+     * @param maxRetainedCapacity the max capacity a slot keeps once used
+     * @param percentile the percentile of the line lengths slots are sized to hold
+     * @param overflowArena the buffers lent to lines that outgrow their slot, can be null
+     */
+    public SlotSizing(int initialCapacity, int maxRetainedCapacity, double percentile, OverflowArena overflowArena) {
+        this.maxRetainedCapacity = Math.max(BUCKET_SIZE, maxRetainedCapacity);
+        this.percentile = Math.min(100.0, Math.max(0.0, percentile));
+        this.overflowArena = overflowArena;
+        this.lengthCounts = new AtomicLongArray(this.maxRetainedCapacity / BUCKET_SIZE + 1);
+        this.slotCapacity = Math.min(Math.max(1, initialCapacity), this.maxRetainedCapacity);
+    }
+
+    /**
+     * The capacity to create a slot with, and to grow a used slot to
+     */
+    public int getSlotCapacity() {
+        return slotCapacity;
+    }
+
+    public int getMaxRetainedCapacity() {
+        return maxRetainedCapacity;
+    }
+
+    public OverflowArena getOverflowArena() {
+        return overflowArena;
+    }
+
+    /**
+     * Records the length of a log line, from the thread consuming the events.
+     */
+    public void record(int length) {
+        lengthCounts.incrementAndGet(Math.min(length / BUCKET_SIZE, lengthCounts.length() - 1));
+        if ((linesRecorded.incrementAndGet() & (UPDATE_INTERVAL - 1)) == 0) {
+            update();
+        }
+    }
+
+    /**
+     * Sets the slot capacity to the percentile of the line lengths recorded, and decays the counts
+     */
+    public void update() {
+        int buckets = lengthCounts.length();
+        long total = 0;
+        for (int i = 0; i < buckets; i++) {
+            total += lengthCounts.get(i);
+        }
+        if (total == 0) {
+            return;
+        }
+
+        long target = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        int bucket = buckets - 1;
+        for (int i = 0; i < buckets; i++) {
+            seen += lengthCounts.get(i);
+            if (seen >= target) {
+                bucket = i;
+                break;
+            }
+        }
+        slotCapacity = Math.min((bucket + 1) * BUCKET_SIZE, maxRetainedCapacity);
+
+        for (int i = 0; i < buckets; i++) {
+            long count = lengthCounts.get(i);
+            lengthCounts.addAndGet(i, -(count / 2));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.greencheek.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A coarse clock, that reads the system clock on a ticker thread every
+ * <code>resolutionMillis</code>; so that the threads reading the time, which
+ * do not need it to the milli, read a volatile field rather than calling
+ * {@link System#currentTimeMillis()}.
+ *
+ * Each time the second changes the ticker formats the new second's timestamp, for the
+ * given {@link SharedDateFormat}s; so the threads logging requests find it ready.
+ */
+public class CachedClock implements Runnable {
+
+    private final long resolutionMillis;
+    private final SharedDateFormat[] prerendered;
+
+    private volatile long now = System.currentTimeMillis();
+    private volatile boolean running = true;
+    private volatile Thread thread;
+
+    /**
+     * @param resolutionMillis the interval at which the clock is updated
+     * @param prerendered the formats to be formatted, as each second starts
+     */
+    public CachedClock(long resolutionMillis, SharedDateFormat... prerendered) {
+        this.resolutionMillis = Math.max(1, resolutionMillis);
+        this.prerendered = prerendered;
+    }
+
+    public void start() {
+        Thread ticker = new Thread(this, "AccessLogClock");
+        ticker.setDaemon(true);
+        thread = ticker;
+        ticker.start();
+    }
+
+    /**
+     * The time, in millis, as of the last tick
+     */
+    public long currentTimeMillis() {
+        return now;
+    }
+
+    @Override
+    public void run() {
+        long lastSecond = 0;
+        try {
+            while (running) {
+                long time = System.currentTimeMillis();
+                now = time;
+                long second = time / 1000;
+                if (second != lastSecond) {
+                    lastSecond = second;
+                    for (SharedDateFormat format : prerendered) {
+                        format.formatToBytes(time);
+                    }
+                }
+                TimeUnit.MILLISECONDS.sleep(resolutionMillis);
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    public void stop() {
+        running = false;
+        Thread ticker = thread;
+        if (ticker != null) {
+            ticker.interrupt();
+        }
+    }
+}
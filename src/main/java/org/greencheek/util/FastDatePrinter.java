@@ -16,6 +16,8 @@
  */
 package org.greencheek.util;
 
+import org.greencheek.logging.domin.ResizableByteBuffer;
+
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
@@ -149,6 +151,26 @@ public class FastDatePrinter implements Serializable {
      */
     private transient int mMaxLengthEstimate;
 
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    /**
+     * For {@link #formatTo(ResizableByteBuffer, long)}, the rendering of each rule that only
+     * changes from day to day (null for the time of day fields); for the day and zone offset
+     * they were rendered for.
+     */
+    private transient byte[][] mCachedDayBytes;
+    private transient long mCachedDay;
+    private transient int mCachedOffset;
+
+    /**
+     * For {@link #formatTo(ResizableByteBuffer, long)}, the rendering of the second last
+     * formatted; when the pattern has no millisecond field.
+     */
+    private transient boolean mUsesMillis;
+    private transient byte[] mCachedSecondBytes;
+    private transient int mCachedSecondLength;
+    private transient long mCachedSecond;
+
     // Constructor
     //-----------------------------------------------------------------------
     /**
@@ -180,6 +202,17 @@ public class FastDatePrinter implements Serializable {
         }
 
         mMaxLengthEstimate = len;
+
+        mCachedDayBytes = new byte[mRules.length][];
+        mCachedDay = Long.MIN_VALUE;
+        mCachedSecondBytes = new byte[Math.max(16, len)];
+        mCachedSecond = Long.MIN_VALUE;
+        mUsesMillis = false;
+        for (final Rule rule : mRules) {
+            if (rule instanceof TimeOfDayField && ((TimeOfDayField) rule).isMillis()) {
+                mUsesMillis = true;
+            }
+        }
     }
 
     // Parse the pattern
@@ -243,19 +276,19 @@ public class FastDatePrinter implements Serializable {
                 rule = selectNumberRule(Calendar.DAY_OF_MONTH, tokenLen);
                 break;
             case 'h': // hour in am/pm (number, 1..12)
-                rule = new TwelveHourField(selectNumberRule(Calendar.HOUR, tokenLen));
+                rule = new TimeOfDayField(c, tokenLen, new TwelveHourField(selectNumberRule(Calendar.HOUR, tokenLen)));
                 break;
             case 'H': // hour in day (number, 0..23)
-                rule = selectNumberRule(Calendar.HOUR_OF_DAY, tokenLen);
+                rule = new TimeOfDayField(c, tokenLen, selectNumberRule(Calendar.HOUR_OF_DAY, tokenLen));
                 break;
             case 'm': // minute in hour (number)
-                rule = selectNumberRule(Calendar.MINUTE, tokenLen);
+                rule = new TimeOfDayField(c, tokenLen, selectNumberRule(Calendar.MINUTE, tokenLen));
                 break;
             case 's': // second in minute (number)
-                rule = selectNumberRule(Calendar.SECOND, tokenLen);
+                rule = new TimeOfDayField(c, tokenLen, selectNumberRule(Calendar.SECOND, tokenLen));
                 break;
             case 'S': // millisecond (number)
-                rule = selectNumberRule(Calendar.MILLISECOND, tokenLen);
+                rule = new TimeOfDayField(c, tokenLen, selectNumberRule(Calendar.MILLISECOND, tokenLen));
                 break;
             case 'E': // day in week (text)
                 rule = new TextField(Calendar.DAY_OF_WEEK, tokenLen < 4 ? shortWeekdays : weekdays);
@@ -273,13 +306,13 @@ public class FastDatePrinter implements Serializable {
                 rule = selectNumberRule(Calendar.WEEK_OF_MONTH, tokenLen);
                 break;
             case 'a': // am/pm marker (text)
-                rule = new TextField(Calendar.AM_PM, AmPmStrings);
+                rule = new TimeOfDayField(AmPmStrings, new TextField(Calendar.AM_PM, AmPmStrings));
                 break;
             case 'k': // hour in day (1..24)
-                rule = new TwentyFourHourField(selectNumberRule(Calendar.HOUR_OF_DAY, tokenLen));
+                rule = new TimeOfDayField(c, tokenLen, new TwentyFourHourField(selectNumberRule(Calendar.HOUR_OF_DAY, tokenLen)));
                 break;
             case 'K': // hour in am/pm (0..11)
-                rule = selectNumberRule(Calendar.HOUR, tokenLen);
+                rule = new TimeOfDayField(c, tokenLen, selectNumberRule(Calendar.HOUR, tokenLen));
                 break;
             case 'z': // time zone (text)
                 if (tokenLen >= 4) {
@@ -427,6 +460,77 @@ public class FastDatePrinter implements Serializable {
     }
 
 
+    /**
+     * <p>Formats the given time into the buffer, as UTF-8, without creating any garbage.</p>
+     *
+     * <p>The fields of the date (and the time zone) are rendered with the calendar once a day,
+     * and cached; the fields of the time of day are worked out from the millis of the day.
+     * Without a millisecond field, the whole rendering is reused within the same second.</p>
+     *
+     * @param buffer  the buffer to format into
+     * @param time  the time, in millis
+     */
+    public void formatTo(final ResizableByteBuffer buffer, final long time) {
+        final int offset = mTimeZone.getOffset(time);
+        final long localTime = time + offset;
+        long day = localTime / MILLIS_PER_DAY;
+        if (localTime % MILLIS_PER_DAY < 0) {
+            day--;
+        }
+        if (day != mCachedDay || offset != mCachedOffset) {
+            cacheDay(time, day, offset);
+        }
+
+        long second = time / 1000;
+        if (time % 1000 < 0) {
+            second--;
+        }
+        if (!mUsesMillis && second == mCachedSecond) {
+            buffer.putByteArrayByOffsetWithResize(mCachedSecondBytes, 0, mCachedSecondLength);
+            return;
+        }
+
+        final int start = buffer.size();
+        final int millisOfDay = (int) (localTime - day * MILLIS_PER_DAY);
+        for (int i = 0; i < mRules.length; i++) {
+            final byte[] cached = mCachedDayBytes[i];
+            if (cached != null) {
+                buffer.append(cached);
+            } else {
+                ((TimeOfDayField) mRules[i]).appendTo(buffer, millisOfDay);
+            }
+        }
+
+        if (!mUsesMillis) {
+            final int length = buffer.size() - start;
+            if (length > mCachedSecondBytes.length) {
+                mCachedSecondBytes = new byte[length];
+            }
+            System.arraycopy(buffer.getBuf(), start, mCachedSecondBytes, 0, length);
+            mCachedSecondLength = length;
+            mCachedSecond = second;
+        }
+    }
+
+    /**
+     * Renders the rules that do not change within the day, for the day of the given time
+     */
+    private void cacheDay(final long time, final long day, final int offset) {
+        final Calendar c = newCalendar();
+        c.setTimeInMillis(time);
+        final StringBuilder buf = new StringBuilder(mMaxLengthEstimate);
+        for (int i = 0; i < mRules.length; i++) {
+            if (!(mRules[i] instanceof TimeOfDayField)) {
+                buf.setLength(0);
+                mRules[i].appendTo(buf, c);
+                mCachedDayBytes[i] = buf.toString().getBytes(ResizableByteBuffer.UTF8);
+            }
+        }
+        mCachedDay = day;
+        mCachedOffset = offset;
+        mCachedSecond = Long.MIN_VALUE;
+    }
+
     /**
      * <p>Performs the formatting by applying the rules to the
      * specified calendar.</p>
@@ -1035,6 +1139,116 @@ public class FastDatePrinter implements Serializable {
         }
     }
 
+    /**
+     * <p>Inner class wrapping the rule for a field that changes within a day; so that
+     * the field can also be rendered from the millis of the day, without a calendar.</p>
+     */
+    private static class TimeOfDayField implements Rule {
+        private static final int MILLIS_PER_HOUR = 60 * 60 * 1000;
+
+        private final Rule mRule;
+        private final char mPatternLetter;
+        private final int mMinDigits;
+        private final byte[][] mAmPmBytes;
+
+        /**
+         * Constructs an instance of {@code TimeOfDayField} for a numeric field.
+         *
+         * @param patternLetter the pattern letter of the field
+         * @param minDigits the number of digits the field is padded to
+         * @param rule the rule, for rendering with a calendar
+         */
+        TimeOfDayField(final char patternLetter, final int minDigits, final Rule rule) {
+            mRule = rule;
+            mPatternLetter = patternLetter;
+            mMinDigits = minDigits;
+            mAmPmBytes = null;
+        }
+
+        /**
+         * Constructs an instance of {@code TimeOfDayField} for the am/pm marker.
+         *
+         * @param amPmStrings the am and pm markers
+         * @param rule the rule, for rendering with a calendar
+         */
+        TimeOfDayField(final String[] amPmStrings, final Rule rule) {
+            mRule = rule;
+            mPatternLetter = 'a';
+            mMinDigits = 0;
+            mAmPmBytes = new byte[][] {
+                    amPmStrings[Calendar.AM].getBytes(ResizableByteBuffer.UTF8),
+                    amPmStrings[Calendar.PM].getBytes(ResizableByteBuffer.UTF8)
+            };
+        }
+
+        boolean isMillis() {
+            return mPatternLetter == 'S';
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int estimateLength() {
+            return mRule.estimateLength();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void appendTo(final StringBuilder buffer, final Calendar calendar) {
+            mRule.appendTo(buffer, calendar);
+        }
+
+        /**
+         * Appends the field, worked out from the given millis of the day
+         */
+        void appendTo(final ResizableByteBuffer buffer, final int millisOfDay) {
+            final int hour = millisOfDay / MILLIS_PER_HOUR;
+            final int value;
+            switch (mPatternLetter) {
+            case 'H':
+                value = hour;
+                break;
+            case 'k':
+                value = hour == 0 ? 24 : hour;
+                break;
+            case 'K':
+                value = hour % 12;
+                break;
+            case 'h':
+                value = hour % 12 == 0 ? 12 : hour % 12;
+                break;
+            case 'm':
+                value = millisOfDay / 60000 % 60;
+                break;
+            case 's':
+                value = millisOfDay / 1000 % 60;
+                break;
+            case 'S':
+                value = millisOfDay % 1000;
+                break;
+            default:
+                buffer.append(mAmPmBytes[hour < 12 ? 0 : 1]);
+                return;
+            }
+
+            int digits = 1;
+            int divisor = 1;
+            while (value / divisor >= 10) {
+                divisor *= 10;
+                digits++;
+            }
+            for (int i = digits; i < mMinDigits; i++) {
+                buffer.append((byte) '0');
+            }
+            for (; divisor > 0; divisor /= 10) {
+                buffer.append((byte) ('0' + value / divisor % 10));
+            }
+        }
+    }
+
     //-----------------------------------------------------------------------
 
     private static ConcurrentMap<TimeZoneDisplayKey, String> cTimeZoneDisplayCache =
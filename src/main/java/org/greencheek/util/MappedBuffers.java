@@ -0,0 +1,63 @@
+package org.greencheek.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Releases the memory mapping held by a {@link MappedByteBuffer}, rather than
+ * waiting on the garbage collector to do so.  There is no public api for this, so
+ * the jdk internals are used.  On a jdk 9+ it is Unsafe.invokeCleaner, on earlier
+ * jdks it is the buffer's sun.misc.Cleaner.  If neither is available the mapping
+ * is left for the garbage collector to release.
+ */
+public class MappedBuffers {
+
+    private static final Object unsafe;
+    private static final Method invokeCleaner;
+    private static final Method cleanerMethod;
+    private static final Method cleanMethod;
+
+    static {
+        Object theUnsafe = null;
+        Method invoke = null;
+        Method cleaner = null;
+        Method clean = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invoke = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            theUnsafe = field.get(null);
+        } catch (Throwable e) {
+            invoke = null;
+            try {
+                cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+                clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            } catch (Throwable t) {
+                cleaner = null;
+                clean = null;
+            }
+        }
+        unsafe = theUnsafe;
+        invokeCleaner = invoke;
+        cleanerMethod = cleaner;
+        cleanMethod = clean;
+    }
+
+    public static void unmap(MappedByteBuffer buffer) {
+        try {
+            if (invokeCleaner != null) {
+                invokeCleaner.invoke(unsafe, buffer);
+            } else if (cleanerMethod != null) {
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleanMethod.invoke(cleaner);
+                }
+            }
+        } catch (Throwable e) {
+            // leave it to the gc
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.greencheek.util;
+
+import org.greencheek.logging.domin.ResizableByteBuffer;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * A date format whose output, which changes at most once a second, is shared by all
+ * threads.  The timestamp of the current second (and the one before it) is held,
+ * already formatted, behind a volatile reference; so that rather than each thread
+ * keeping its own formatter and re-formatting the timestamp as the second changes,
+ * the timestamp is formatted once a second, normally by the {@link CachedClock}.
+ *
+ * The format must not contain fields finer than seconds.  Thread safe.
+ */
+public class SharedDateFormat {
+
+    /**
+     * The common log format timestamp
+     */
+    public static final SharedDateFormat CLF = new SharedDateFormat("[dd/MMM/yyyy:HH:mm:ss Z]", Locale.US);
+
+    private final FastDatePrinter formatter;
+    private final ResizableByteBuffer formatted = new ResizableByteBuffer(64);
+    private volatile FormattedSecond current = new FormattedSecond(Long.MIN_VALUE, new byte[0], null);
+
+    public SharedDateFormat(String format, Locale locale) {
+        formatter = new FastDatePrinter(format, TimeZone.getDefault(), locale);
+    }
+
+    public byte[] formatToBytes(long time) {
+        long seconds = time >= 0 ? time / 1000 : (time - 999) / 1000;
+        FormattedSecond second = current;
+        if (second.seconds == seconds) {
+            return second.bytes;
+        }
+        FormattedSecond previous = second.previous;
+        if (previous != null && previous.seconds == seconds) {
+            return previous.bytes;
+        }
+
+        byte[] bytes;
+        synchronized (formatter) {
+            formatted.reset();
+            formatter.formatTo(formatted, time);
+            bytes = Arrays.copyOf(formatted.getBuf(), formatted.size());
+        }
+        if (seconds > second.seconds) {
+            // The second has moved on, racing threads publish equivalent values
+            current = new FormattedSecond(seconds, bytes,
+                    new FormattedSecond(second.seconds, second.bytes, null));
+        }
+        return bytes;
+    }
+
+    private static final class FormattedSecond {
+        final long seconds;
+        final byte[] bytes;
+        final FormattedSecond previous;
+
+        FormattedSecond(long seconds, byte[] bytes, FormattedSecond previous) {
+            this.seconds = seconds;
+            this.bytes = bytes;
+            this.previous = previous;
+        }
+    }
+}
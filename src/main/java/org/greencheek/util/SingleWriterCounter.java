@@ -0,0 +1,29 @@
+package org.greencheek.util;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A counter that is only ever updated by the one thread, but can be read from
+ * any thread.  As there is a single writer, no atomic read-modify-write is
+ * needed; the new value is published with a lazySet, which is a plain store
+ * without the memory fence of a volatile write.
+ */
+public class SingleWriterCounter {
+
+    private static final AtomicLongFieldUpdater<SingleWriterCounter> UPDATER =
+            AtomicLongFieldUpdater.newUpdater(SingleWriterCounter.class,"value");
+
+    private volatile long value;
+
+    public void increment() {
+        UPDATER.lazySet(this,value+1);
+    }
+
+    public void add(long delta) {
+        UPDATER.lazySet(this,value+delta);
+    }
+
+    public long get() {
+        return value;
+    }
+}
@@ -0,0 +1,57 @@
+package org.greencheek.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that many threads can increment without contending on the same
+ * cache line.  The count is spread over a number of stripes, and a thread
+ * always increments the stripe picked by its thread id.  Each stripe sits 128
+ * bytes apart, so that no two stripes share a cache line.
+ *
+ * Reading the count sums the stripes, so is more expensive than incrementing it,
+ * and is not a point in time snapshot.
+ */
+public class StripedCounter {
+
+    // number of longs between each stripe
+    private static final int PADDING = 16;
+
+    private final AtomicLongArray stripes;
+    private final int mask;
+
+    public StripedCounter() {
+        this(Runtime.getRuntime().availableProcessors()*2);
+    }
+
+    public StripedCounter(int numberOfStripes) {
+        int size = 1;
+        while(size<numberOfStripes) {
+            size<<=1;
+        }
+        mask = size-1;
+        // an extra stripe's worth of padding, so the first stripe
+        // is not on the same cache line as the array's header
+        stripes = new AtomicLongArray((size+1)*PADDING);
+    }
+
+    private int index() {
+        // thread ids are handed out in sequence, so spread evenly over the stripes
+        return (((int)Thread.currentThread().getId() & mask) + 1) * PADDING;
+    }
+
+    public void increment() {
+        stripes.getAndIncrement(index());
+    }
+
+    public void add(long delta) {
+        stripes.getAndAdd(index(),delta);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for(int i=1;i<=mask+1;i++) {
+            sum += stripes.get(i*PADDING);
+        }
+        return sum;
+    }
+}
@@ -1,20 +1,45 @@
 package org.greencheek.util;
 
 import java.lang.reflect.Field;
-import java.nio.CharBuffer;
 
 import sun.misc.Unsafe;
 
 /**
  * All credit for this goes to:
  * https://github.com/nitsanw/javanetperf/blob/psylobsaw/src/psy/lob/saw/UnsafeString.java
+ *
+ * The layout of String is worked out at runtime.  Up to JDK 8 the value of a String is
+ * a char[] (with an offset up to JDK 6); from JDK 9 strings are compact, the value is a
+ * byte[] holding either ISO-8859-1 or UTF-16 bytes, as given by the coder.  If the layout
+ * is neither, or Unsafe is not available, it is {@link LAYOUT_TYPE#UNKNOWN} and nothing
+ * here should be called.
  */
 public class UnsafeString {
+
+    public enum LAYOUT_TYPE {
+        CHAR_ARRAY,
+        COMPACT,
+        UNKNOWN
+    }
+
+    /**
+     * The coder of a compact String holding ISO-8859-1 bytes
+     */
+    public static final byte LATIN1 = 0;
+
+    public static final LAYOUT_TYPE LAYOUT;
+
     private static final Unsafe unsafe;
     private static final long valueOffset;
     private static final long offsetOffset;
+    private static final long coderOffset;
 
     static {
+        Unsafe theUnsafe = null;
+        long value = -1L;
+        long offset = -1L;
+        long coder = -1L;
+        LAYOUT_TYPE layout = LAYOUT_TYPE.UNKNOWN;
         try {
             // This is a bit of voodoo to force the unsafe object into
             // visibility and acquire it.
@@ -23,33 +48,47 @@ public class UnsafeString {
             // taken away.
             Field field = Unsafe.class.getDeclaredField("theUnsafe");
             field.setAccessible(true);
-            unsafe = (Unsafe) field.get(null);
-            valueOffset = unsafe.objectFieldOffset(String.class
-                    .getDeclaredField("value"));
-            Field declaredField;
+            theUnsafe = (Unsafe) field.get(null);
+            Field valueField = String.class.getDeclaredField("value");
+            value = theUnsafe.objectFieldOffset(valueField);
 
-            try {
-                declaredField = String.class.getDeclaredField("offset");
+            if (valueField.getType() == char[].class) {
+                layout = LAYOUT_TYPE.CHAR_ARRAY;
+                try {
+                    offset = theUnsafe.objectFieldOffset(String.class.getDeclaredField("offset"));
+                }
+                // this will happen for jdk7 as these fields have been removed
+                catch (NoSuchFieldException e) {
+                    offset = -1L;
+                }
+            } else if (valueField.getType() == byte[].class) {
+                Field coderField = String.class.getDeclaredField("coder");
+                if (coderField.getType() == byte.class) {
+                    coder = theUnsafe.objectFieldOffset(coderField);
+                    layout = LAYOUT_TYPE.COMPACT;
+                }
             }
-            // this will happen for jdk7 as these fields have been removed
-            catch (NoSuchFieldException e) {
-                declaredField = null;
-            }
-            if (declaredField != null) {
-                offsetOffset = unsafe.objectFieldOffset(declaredField);
-            } else {
-                offsetOffset = -1L;
-            }
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        } catch (Throwable e) {
+            layout = LAYOUT_TYPE.UNKNOWN;
         }
+        unsafe = theUnsafe;
+        valueOffset = value;
+        offsetOffset = offset;
+        coderOffset = coder;
+        LAYOUT = layout;
     }
 
 
+    /**
+     * The char[] value of the String, only for the {@link LAYOUT_TYPE#CHAR_ARRAY} layout
+     */
     public final static char[] getChars(String s) {
         return (char[]) unsafe.getObject(s, valueOffset);
     }
 
+    /**
+     * The offset into the char[] value of the String, only for the {@link LAYOUT_TYPE#CHAR_ARRAY} layout
+     */
     public final static int getOffset(String s) {
         if (offsetOffset == -1L)
             return 0;
@@ -57,5 +96,17 @@ public class UnsafeString {
             return unsafe.getInt(s, offsetOffset);
     }
 
+    /**
+     * The byte[] value of the String, only for the {@link LAYOUT_TYPE#COMPACT} layout
+     */
+    public final static byte[] getBytes(String s) {
+        return (byte[]) unsafe.getObject(s, valueOffset);
+    }
 
-}
\ No newline at end of file
+    /**
+     * The coder of the String, {@link #LATIN1} or UTF16; only for the {@link LAYOUT_TYPE#COMPACT} layout
+     */
+    public final static byte getCoder(String s) {
+        return unsafe.getByte(s, coderOffset);
+    }
+}